@@ -0,0 +1,44 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the throughput of parsing booking IDs, valid and malformed, with {@link UUID#fromString(String)} wrapped
+ * as the controller used to against {@link UuidParser}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UuidParserBenchmark {
+
+    @Param({"03c09a44-1168-4080-8478-6d8d258a4ea0", "not-a-booking-id"})
+    String id;
+
+    @Benchmark
+    public Object fromString() {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return new IllegalArgumentException("Invalid ID provided.", e);
+        }
+    }
+
+    @Benchmark
+    public UUID parse() {
+        return UuidParser.parse(id);
+    }
+}
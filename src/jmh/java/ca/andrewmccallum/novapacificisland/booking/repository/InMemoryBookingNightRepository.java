@@ -0,0 +1,141 @@
+package ca.andrewmccallum.novapacificisland.booking.repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import ca.andrewmccallum.novapacificisland.booking.model.BookingNight;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+/**
+ * {@link BookingNightRepository} held in memory, to benchmark the service without the cost of the database. Nights
+ * are unique, as in the database.
+ */
+public class InMemoryBookingNightRepository implements BookingNightRepository {
+
+    private final NavigableMap<LocalDate, BookingNight> nights = new ConcurrentSkipListMap<>();
+    private final Map<UUID, Set<LocalDate>> nightsByBooking = new ConcurrentHashMap<>();
+
+    @Override
+    public List<LocalDate> findOccupiedNights(LocalDate startDate, LocalDate endDate) {
+        return new ArrayList<>(nights.subMap(startDate, endDate).keySet());
+    }
+
+    @Override
+    public int deleteNightsOutside(UUID bookingId, LocalDate checkinDate, LocalDate checkoutDate) {
+        return deleteNights(bookingId, n -> n.isBefore(checkinDate) || !n.isBefore(checkoutDate));
+    }
+
+    @Override
+    public int deleteNights(UUID bookingId) {
+        return deleteNights(bookingId, n -> true);
+    }
+
+    private int deleteNights(UUID bookingId, Predicate<LocalDate> filter) {
+
+        var bookingNights = nightsByBooking.get(bookingId);
+        if (bookingNights == null) {
+            return 0;
+        }
+
+        var deleted = bookingNights.stream().filter(filter).collect(Collectors.toList());
+        deleted.forEach(n -> {
+            nights.remove(n);
+            bookingNights.remove(n);
+        });
+
+        return deleted.size();
+    }
+
+    @Override
+    public <S extends BookingNight> S save(S entity) {
+
+        if (entity.getId() == null) {
+            entity.setId(UUID.randomUUID());
+        }
+
+        if (nights.putIfAbsent(entity.getNight(), entity) != null) {
+            throw new DataIntegrityViolationException("Night " + entity.getNight() + " is already booked.");
+        }
+        nightsByBooking.computeIfAbsent(entity.getBooking().getId(), id -> ConcurrentHashMap.newKeySet())
+                .add(entity.getNight());
+
+        return entity;
+    }
+
+    @Override
+    public <S extends BookingNight> Iterable<S> saveAll(Iterable<S> entities) {
+        var saved = new ArrayList<S>();
+        entities.forEach(e -> saved.add(save(e)));
+        return saved;
+    }
+
+    @Override
+    public Optional<BookingNight> findById(UUID id) {
+        return nights.values().stream().filter(n -> n.getId().equals(id)).findFirst();
+    }
+
+    @Override
+    public boolean existsById(UUID id) {
+        return findById(id).isPresent();
+    }
+
+    @Override
+    public Iterable<BookingNight> findAll() {
+        return new ArrayList<>(nights.values());
+    }
+
+    @Override
+    public Iterable<BookingNight> findAllById(Iterable<UUID> ids) {
+        return StreamSupport.stream(ids.spliterator(), false)
+                .map(this::findById)
+                .flatMap(Optional::stream)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long count() {
+        return nights.size();
+    }
+
+    @Override
+    public void deleteById(UUID id) {
+        delete(findById(id).orElseThrow(() -> new EmptyResultDataAccessException(1)));
+    }
+
+    @Override
+    public void delete(BookingNight entity) {
+        if (nights.remove(entity.getNight(), entity)) {
+            var bookingNights = nightsByBooking.get(entity.getBooking().getId());
+            if (bookingNights != null) {
+                bookingNights.remove(entity.getNight());
+            }
+        }
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends UUID> ids) {
+        ids.forEach(this::deleteById);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends BookingNight> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        nights.clear();
+        nightsByBooking.clear();
+    }
+}
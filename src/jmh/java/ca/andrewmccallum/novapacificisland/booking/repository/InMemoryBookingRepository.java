@@ -0,0 +1,125 @@
+package ca.andrewmccallum.novapacificisland.booking.repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import ca.andrewmccallum.novapacificisland.booking.model.BookingDates;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+/**
+ * {@link BookingRepository} held in memory, to benchmark the service without the cost of the database.
+ */
+public class InMemoryBookingRepository implements BookingRepository {
+
+    private final Map<UUID, Booking> bookings = new ConcurrentHashMap<>();
+
+    @Override
+    public List<BookingDates> findBookingDatesByCheckoutDateAfter(LocalDate date) {
+        return bookings.values().stream()
+                .filter(b -> b.getCheckoutDate().isAfter(date))
+                .map(b -> new BookingDates(b.getCheckinDate(), b.getCheckoutDate()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int deleteByIdAndVersion(UUID id, Long version) {
+        var deleted = new boolean[1];
+        bookings.computeIfPresent(id, (key, existing) -> {
+            deleted[0] = existing.getVersion().equals(version);
+            return deleted[0] ? null : existing;
+        });
+        return deleted[0] ? 1 : 0;
+    }
+
+    @Override
+    public <S extends Booking> S save(S entity) {
+
+        if (entity.getId() == null) {
+            entity.setId(UUID.randomUUID());
+        }
+
+        // versioned like the entity, so stale updates fail here too
+        var saved = new Booking(entity);
+        saved.setVersion(entity.getVersion() == null ? 0 : entity.getVersion() + 1);
+        bookings.compute(entity.getId(), (id, existing) -> {
+            if (existing != null && !existing.getVersion().equals(entity.getVersion())) {
+                throw new ObjectOptimisticLockingFailureException(Booking.class, id);
+            }
+            return saved;
+        });
+
+        entity.setVersion(saved.getVersion());
+        return entity;
+    }
+
+    @Override
+    public <S extends Booking> Iterable<S> saveAll(Iterable<S> entities) {
+        var saved = new ArrayList<S>();
+        entities.forEach(e -> saved.add(save(e)));
+        return saved;
+    }
+
+    @Override
+    public Optional<Booking> findById(UUID id) {
+        return Optional.ofNullable(bookings.get(id)).map(Booking::new);
+    }
+
+    @Override
+    public boolean existsById(UUID id) {
+        return bookings.containsKey(id);
+    }
+
+    @Override
+    public Iterable<Booking> findAll() {
+        return bookings.values().stream().map(Booking::new).collect(Collectors.toList());
+    }
+
+    @Override
+    public Iterable<Booking> findAllById(Iterable<UUID> ids) {
+        return StreamSupport.stream(ids.spliterator(), false)
+                .map(bookings::get)
+                .filter(b -> b != null)
+                .map(Booking::new)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long count() {
+        return bookings.size();
+    }
+
+    @Override
+    public void deleteById(UUID id) {
+        if (bookings.remove(id) == null) {
+            throw new EmptyResultDataAccessException(1);
+        }
+    }
+
+    @Override
+    public void delete(Booking entity) {
+        bookings.remove(entity.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends UUID> ids) {
+        ids.forEach(bookings::remove);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Booking> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        bookings.clear();
+    }
+}
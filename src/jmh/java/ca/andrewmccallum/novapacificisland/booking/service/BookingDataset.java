@@ -0,0 +1,61 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+import ca.andrewmccallum.novapacificisland.booking.data.BookingDataGenerator;
+import ca.andrewmccallum.novapacificisland.booking.data.BookingDataWriter;
+import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import ca.andrewmccallum.novapacificisland.booking.model.BookingNight;
+import ca.andrewmccallum.novapacificisland.booking.repository.BookingNightRepository;
+import ca.andrewmccallum.novapacificisland.booking.repository.BookingRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * A synthetic set of bookings for benchmarks.
+ * <p>
+ * Only one booking may hold a night, so a large set stretches far beyond the bookable month. The start of the month
+ * is left free for benchmarked writes, with the bookings following from later in the month.
+ */
+final class BookingDataset {
+
+    /**
+     * The first night of the month (as days from today) which the dataset may occupy.
+     */
+    static final int FIRST_OCCUPIED_DAY = 12;
+
+    private BookingDataset() {
+    }
+
+    /**
+     * @param size the number of bookings
+     * @param today the date from which the bookable month starts
+     * @param seed the seed for the generator, so the same dataset can be generated again
+     */
+    static List<Booking> generate(int size, LocalDate today, long seed) {
+        return new BookingDataGenerator(seed)
+                .generate(today.plusDays(FIRST_OCCUPIED_DAY), size)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Save bookings and their nights through the repositories, such as in-memory stubs.
+     */
+    static void save(List<Booking> bookings,
+                     BookingRepository bookingRepository,
+                     BookingNightRepository bookingNightRepository) {
+
+        for (Booking booking : bookings) {
+            var savedBooking = bookingRepository.save(new Booking(booking));
+            booking.getCheckinDate().datesUntil(booking.getCheckoutDate())
+                    .forEach(d -> bookingNightRepository.save(new BookingNight(savedBooking, d)));
+        }
+    }
+
+    /**
+     * Insert bookings and their nights into the database with batched JDBC.
+     */
+    static void insert(List<Booking> bookings, JdbcTemplate jdbcTemplate) {
+        new BookingDataWriter(jdbcTemplate).insert(bookings.stream());
+    }
+}
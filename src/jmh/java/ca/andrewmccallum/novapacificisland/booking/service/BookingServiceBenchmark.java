@@ -0,0 +1,195 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import ca.andrewmccallum.novapacificisland.booking.BookingApplication;
+import ca.andrewmccallum.novapacificisland.booking.dto.BookingDTO;
+import ca.andrewmccallum.novapacificisland.booking.repository.InMemoryBookingNightRepository;
+import ca.andrewmccallum.novapacificisland.booking.repository.InMemoryBookingRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+/**
+ * Benchmarks the {@link BookingService} hot paths against datasets of increasing size, backed by either the H2
+ * database or in-memory stub repositories. Run with {@code ./gradlew jmh}; the GC profiler reports allocation per
+ * operation alongside the timings.
+ * <p>
+ * Each write benchmark leaves the bookings as it found them, writing to nights at the start of the bookable month
+ * which the dataset leaves free.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BookingServiceBenchmark {
+
+    private static final long DATASET_SEED = 42;
+
+    @State(Scope.Benchmark)
+    public static class Bookings {
+
+        @Param({"1000", "100000", "1000000"})
+        int size;
+
+        @Param({"h2", "stub"})
+        String repository;
+
+        BookingService bookingService;
+        LocalDate today;
+
+        private ConfigurableApplicationContext context;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            var clock = Clock.systemDefaultZone();
+            today = LocalDate.now(clock);
+            var dataset = BookingDataset.generate(size, today, DATASET_SEED);
+
+            if (repository.equals("h2")) {
+                context = new SpringApplicationBuilder(BookingApplication.class)
+                        .web(WebApplicationType.NONE)
+                        .properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+                        .run();
+                BookingDataset.insert(dataset, context.getBean(JdbcTemplate.class));
+                bookingService = context.getBean(BookingService.class);
+            } else {
+                var bookingRepository = new InMemoryBookingRepository();
+                var bookingNightRepository = new InMemoryBookingNightRepository();
+                BookingDataset.save(dataset, bookingRepository, bookingNightRepository);
+                bookingService = new BookingService(bookingRepository, bookingNightRepository, clock,
+                        new NoTransactionManager(), new SimpleMeterRegistry());
+            }
+
+            bookingService.loadOccupancy();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (context != null) {
+                context.close();
+            }
+        }
+
+        BookingDTO stay(int fromDay, int toDay) {
+            return new BookingDTO(today.plusDays(fromDay), today.plusDays(toDay), "benchmark@example.com", "Bench Mark");
+        }
+    }
+
+    /**
+     * A booking created by the benchmark, cancelled again after each invocation.
+     */
+    @State(Scope.Thread)
+    public static class CreatedBooking {
+
+        UUID bookingId;
+
+        @TearDown(Level.Invocation)
+        public void tearDown(Bookings bookings) {
+            bookings.bookingService.cancelBooking(bookingId);
+        }
+    }
+
+    /**
+     * A booking whose stay moves back and forth by a night on each update.
+     */
+    @State(Scope.Thread)
+    public static class MovingBooking {
+
+        UUID bookingId;
+        boolean moved;
+
+        @Setup(Level.Trial)
+        public void setUp(Bookings bookings) {
+            bookingId = bookings.bookingService.createBooking(bookings.stay(5, 7));
+        }
+    }
+
+    /**
+     * A booking created before each invocation, for the benchmark to cancel.
+     */
+    @State(Scope.Thread)
+    public static class BookingToCancel {
+
+        UUID bookingId;
+
+        @Setup(Level.Invocation)
+        public void setUp(Bookings bookings) {
+            bookingId = bookings.bookingService.createBooking(bookings.stay(9, 11));
+        }
+    }
+
+    @Benchmark
+    public List<LocalDate> findAvailability(Bookings bookings) {
+        return bookings.bookingService.findAvailability(bookings.today, null);
+    }
+
+    @Benchmark
+    public UUID createBooking(Bookings bookings, CreatedBooking createdBooking) {
+        createdBooking.bookingId = bookings.bookingService.createBooking(bookings.stay(2, 4));
+        return createdBooking.bookingId;
+    }
+
+    @Benchmark
+    public BookingDTO updateBooking(Bookings bookings, MovingBooking movingBooking) {
+        movingBooking.moved = !movingBooking.moved;
+        var stay = movingBooking.moved ? bookings.stay(6, 8) : bookings.stay(5, 7);
+        return bookings.bookingService.updateBooking(movingBooking.bookingId, stay);
+    }
+
+    @Benchmark
+    public void cancelBooking(Bookings bookings, BookingToCancel bookingToCancel) {
+        bookings.bookingService.cancelBooking(bookingToCancel.bookingId);
+    }
+
+    /**
+     * Stands in for the transaction manager alongside the in-memory stubs, which need none.
+     */
+    static class NoTransactionManager extends AbstractPlatformTransactionManager {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            // nothing to begin
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            // nothing to commit
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            // nothing to roll back
+        }
+    }
+}
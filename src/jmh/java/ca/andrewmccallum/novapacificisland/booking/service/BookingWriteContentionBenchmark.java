@@ -0,0 +1,161 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import ca.andrewmccallum.novapacificisland.booking.BookingApplication;
+import ca.andrewmccallum.novapacificisland.booking.dto.BookingDTO;
+import ca.andrewmccallum.novapacificisland.booking.repository.InMemoryBookingNightRepository;
+import ca.andrewmccallum.novapacificisland.booking.repository.InMemoryBookingRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Benchmarks {@link BookingService#createBooking(BookingDTO)} under contention, many writers competing for the nights
+ * of the bookable month. Each writer requests a random stay of one to three nights, cancelling it again once booked
+ * so the month never fills up. A request for a night already claimed is rejected rather than waiting, so both the
+ * bookings made and the requests rejected are reported, as {@code created} and {@code rejected}.
+ * <p>
+ * The {@code claims} writes are the service's own, claiming only the nights they book. The {@code fairLock} writes are
+ * the baseline it replaced, each write taking one global fair lock first, as every write once did. Both are run with
+ * 8, 32 and 128 writers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BookingWriteContentionBenchmark {
+
+    private static final int HORIZON_DAYS = 28;
+
+    @State(Scope.Benchmark)
+    public static class Bookings {
+
+        @Param({"h2", "stub"})
+        String repository;
+
+        @Param({"claims", "fairLock"})
+        String writes;
+
+        BookingService bookingService;
+        LocalDate today;
+        /**
+         * Held around every write in the {@code fairLock} baseline.
+         */
+        final ReentrantLock lock = new ReentrantLock(true);
+
+        private ConfigurableApplicationContext context;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            var clock = Clock.systemDefaultZone();
+            today = LocalDate.now(clock);
+
+            if (repository.equals("h2")) {
+                context = new SpringApplicationBuilder(BookingApplication.class)
+                        .web(WebApplicationType.NONE)
+                        .properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+                        .run();
+                bookingService = context.getBean(BookingService.class);
+            } else {
+                bookingService = new BookingService(new InMemoryBookingRepository(), new InMemoryBookingNightRepository(),
+                        clock, new BookingServiceBenchmark.NoTransactionManager(), new SimpleMeterRegistry());
+            }
+
+            bookingService.loadOccupancy();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * The outcomes of a writer's requests, reported alongside the throughput of all of them.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Outcomes {
+
+        public long created;
+        public long rejected;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void createBooking8Writers(Bookings bookings, Outcomes outcomes) {
+        createBooking(bookings, outcomes);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void createBooking32Writers(Bookings bookings, Outcomes outcomes) {
+        createBooking(bookings, outcomes);
+    }
+
+    @Benchmark
+    @Threads(128)
+    public void createBooking128Writers(Bookings bookings, Outcomes outcomes) {
+        createBooking(bookings, outcomes);
+    }
+
+    private static void createBooking(Bookings bookings, Outcomes outcomes) {
+
+        var random = ThreadLocalRandom.current();
+        var checkinDate = bookings.today.plusDays(1 + random.nextInt(HORIZON_DAYS));
+        var stay = new BookingDTO(checkinDate, checkinDate.plusDays(1 + random.nextInt(3)),
+                "benchmark@example.com", "Bench Mark");
+
+        try {
+            var bookingId = write(bookings, () -> bookings.bookingService.createBooking(stay));
+            outcomes.created++;
+            write(bookings, () -> {
+                bookings.bookingService.cancelBooking(bookingId);
+                return null;
+            });
+        } catch (DatesUnavailableException | RejectedExecutionException e) {
+            // taken by another writer, or shed by admission control
+            outcomes.rejected++;
+        }
+    }
+
+    private static <T> T write(Bookings bookings, Supplier<T> write) {
+
+        if (!bookings.writes.equals("fairLock")) {
+            return write.get();
+        }
+
+        bookings.lock.lock();
+        try {
+            return write.get();
+        } finally {
+            bookings.lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import ca.andrewmccallum.novapacificisland.booking.dto.BookingDTO;
+import ca.andrewmccallum.novapacificisland.booking.repository.InMemoryBookingNightRepository;
+import ca.andrewmccallum.novapacificisland.booking.repository.InMemoryBookingRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the throughput of rejecting bookings, by catching what {@link BookingService#createBooking(BookingDTO)}
+ * throws - as the controller used to - against the {@link Rejection} {@link BookingService#validateBooking(BookingDTO)}
+ * returns instead. Backed by the in-memory stub repositories, so only the rejection itself is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RejectionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Bookings {
+
+        BookingService bookingService;
+        /**
+         * Breaks the rule that bookings are made at least a day in advance.
+         */
+        BookingDTO tooSoon;
+        /**
+         * Wants nights which are already booked.
+         */
+        BookingDTO booked;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            var clock = Clock.systemDefaultZone();
+            var today = LocalDate.now(clock);
+            bookingService = new BookingService(new InMemoryBookingRepository(), new InMemoryBookingNightRepository(),
+                    clock, new BookingServiceBenchmark.NoTransactionManager(), new SimpleMeterRegistry());
+            bookingService.loadOccupancy();
+
+            tooSoon = new BookingDTO(today, today.plusDays(2), "benchmark@example.com", "Bench Mark");
+            booked = new BookingDTO(today.plusDays(2), today.plusDays(4), "benchmark@example.com", "Bench Mark");
+            bookingService.createBooking(booked);
+        }
+    }
+
+    @Benchmark
+    public String tooSoon_thrown(Bookings bookings) {
+        try {
+            bookings.bookingService.createBooking(bookings.tooSoon);
+            throw new IllegalStateException("Booking was not rejected.");
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public Rejection tooSoon_returned(Bookings bookings) {
+        return bookings.bookingService.validateBooking(bookings.tooSoon).getRejection();
+    }
+
+    @Benchmark
+    public String booked_thrown(Bookings bookings) {
+        try {
+            bookings.bookingService.createBooking(bookings.booked);
+            throw new IllegalStateException("Booking was not rejected.");
+        } catch (DatesUnavailableException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public Rejection booked_returned(Bookings bookings) {
+        return bookings.bookingService.validateBooking(bookings.booked).getRejection();
+    }
+}
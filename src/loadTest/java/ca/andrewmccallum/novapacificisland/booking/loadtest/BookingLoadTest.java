@@ -0,0 +1,232 @@
+package ca.andrewmccallum.novapacificisland.booking.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import ca.andrewmccallum.novapacificisland.booking.BookingApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Open-model load generator for the {@code /booking} API.
+ * <p>
+ * Requests arrive at the configured rate as a Poisson process, whether or not earlier ones have been answered, so a
+ * slow application sees requests pile up as it would in production rather than having the load back off. Latency is
+ * measured from when each request was due to be sent, not when it was, so time spent queued in the generator counts.
+ * <p>
+ * Without {@code --target}, the application is started in-process on a random port, taking any other arguments as
+ * its own - for example {@code --booking.writes.pipeline.enabled=true}. Run with
+ * {@code ./gradlew loadTest --args='--rate=200 --spike-rate=2000 --spike-at=20 --spike-for=10'}.
+ */
+public final class BookingLoadTest {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final int BOOKING_MAX_NIGHTS = 3;
+    private static final int BOOKING_WINDOW_DAYS = 30;
+    /**
+     * The availability query takes dates in the default short format of the application's locale, not ISO.
+     */
+    private static final DateTimeFormatter AVAILABILITY_DATE_FORMAT =
+            DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT);
+
+    private final LoadTestOptions options;
+    private final URI baseUri;
+    private final Random random;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private final OperationStats availability = new OperationStats("availability");
+    private final OperationStats create = new OperationStats("create");
+    private final OperationStats update = new OperationStats("update");
+    private final OperationStats cancel = new OperationStats("cancel");
+    private final List<OperationStats> operations = List.of(availability, create, update, cancel);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ConcurrentLinkedQueue<String> bookingIds = new ConcurrentLinkedQueue<>();
+
+    private BookingLoadTest(LoadTestOptions options, URI baseUri) {
+        this.options = options;
+        this.baseUri = baseUri;
+        this.random = new Random(options.seed);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        var options = LoadTestOptions.parse(args);
+
+        ConfigurableApplicationContext context = null;
+        var target = options.target;
+        if (target == null) {
+            context = new SpringApplicationBuilder(BookingApplication.class)
+                    .properties("server.port=0", "spring.main.banner-mode=off", "logging.level.root=WARN")
+                    .run(args);
+            target = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+
+        try {
+            new BookingLoadTest(options, URI.create(target)).run();
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    private void run() throws InterruptedException {
+
+        System.out.printf("Load testing %s at %.0f req/s%s for %ds after %ds warm-up.%n",
+                baseUri, options.rate,
+                options.spikeRate > 0 ? String.format(", spiking to %.0f req/s at %ds for %ds",
+                        options.spikeRate, options.spikeAt.toSeconds(), options.spikeFor.toSeconds()) : "",
+                options.duration.toSeconds(), options.warmup.toSeconds());
+
+        long start = System.nanoTime();
+        long measureFrom = start + options.warmup.toNanos();
+        long end = measureFrom + options.duration.toNanos();
+        boolean measuring = false;
+
+        long due = start;
+        while (due < end) {
+
+            if (!measuring && due >= measureFrom) {
+                operations.forEach(OperationStats::reset);
+                measuring = true;
+            }
+
+            sleepUntil(due);
+            send(due);
+
+            // exponential gaps between arrivals, for a Poisson process at the current rate
+            var rate = options.rateAt(Duration.ofNanos(due - start));
+            due += (long) (-Math.log(1 - random.nextDouble()) / rate * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        // let the last requests complete
+        long drainUntil = System.nanoTime() + REQUEST_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < drainUntil) {
+            Thread.sleep(10);
+        }
+
+        double seconds = options.duration.toNanos() / 1e9;
+        System.out.println(OperationStats.header());
+        operations.forEach(o -> System.out.println(o.report(seconds)));
+    }
+
+    private static void sleepUntil(long due) {
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private void send(long due) {
+
+        int pick = random.nextInt(options.totalWeight());
+        if ((pick -= options.availabilityWeight) < 0) {
+            var fromDate = AVAILABILITY_DATE_FORMAT.format(LocalDate.now().plusDays(1));
+            send(availability, due, get("/booking/availability?fromDate=" + fromDate), null);
+        } else if ((pick -= options.createWeight) < 0) {
+            send(create, due, post("/booking", randomStay()), r -> {
+                if (r.statusCode() == 201) {
+                    bookingIds.add(r.body().replace("\"", ""));
+                }
+            });
+        } else if ((pick -= options.updateWeight) < 0) {
+            var bookingId = knownBookingId();
+            var body = random.nextBoolean() ? randomStay() : "{\"fullName\":\"Load Test " + random.nextInt() + "\"}";
+            send(update, due, patch("/booking/" + bookingId, body), r -> {
+                // still there to update or cancel again, unless it never existed
+                if (r.statusCode() != 404) {
+                    bookingIds.add(bookingId);
+                }
+            });
+        } else {
+            send(cancel, due, delete("/booking/" + knownBookingId()), null);
+        }
+    }
+
+    private void send(OperationStats stats,
+                      long due,
+                      HttpRequest request,
+                      Consumer<HttpResponse<String>> onResponse) {
+
+        if (inFlight.incrementAndGet() > options.maxInFlight) {
+            inFlight.decrementAndGet();
+            stats.recordDropped();
+            return;
+        }
+
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, e) -> {
+                    inFlight.decrementAndGet();
+                    long latency = System.nanoTime() - due;
+                    if (e != null) {
+                        stats.recordFailure(latency);
+                        return;
+                    }
+
+                    stats.recordResponse(response.statusCode(), latency);
+                    if (onResponse != null) {
+                        onResponse.accept(response);
+                    }
+                });
+    }
+
+    /**
+     * Take a booking created earlier, or make up one which does not exist if there are none.
+     */
+    private String knownBookingId() {
+        var bookingId = bookingIds.poll();
+        return bookingId != null ? bookingId : UUID.randomUUID().toString();
+    }
+
+    private String randomStay() {
+
+        var checkinDate = LocalDate.now().plusDays(1 + random.nextInt(BOOKING_WINDOW_DAYS));
+        var checkoutDate = checkinDate.plusDays(1 + random.nextInt(BOOKING_MAX_NIGHTS));
+        int guest = random.nextInt(1_000_000);
+
+        return String.format("{\"checkinDate\":\"%s\",\"checkoutDate\":\"%s\","
+                        + "\"email\":\"guest%d@example.com\",\"fullName\":\"Guest %d\"}",
+                checkinDate, checkoutDate, guest, guest);
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest post(String path, String body) {
+        return request(path).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest patch(String path, String body) {
+        return request(path).header("Content-Type", "application/json")
+                .method("PATCH", HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest delete(String path) {
+        return request(path).DELETE().build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(REQUEST_TIMEOUT);
+    }
+}
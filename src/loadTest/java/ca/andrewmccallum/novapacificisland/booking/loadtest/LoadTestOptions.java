@@ -0,0 +1,97 @@
+package ca.andrewmccallum.novapacificisland.booking.loadtest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Options for a load test, parsed from {@code --name=value} arguments.
+ */
+final class LoadTestOptions {
+
+    /**
+     * The base URL of the application, or null to start one in-process.
+     */
+    final String target;
+
+    /**
+     * The mean arrival rate of requests per second, regardless of how quickly they are answered.
+     */
+    final double rate;
+
+    /**
+     * The arrival rate during the spike, such as when the booking window opens, or zero for no spike.
+     */
+    final double spikeRate;
+    final Duration spikeAt;
+    final Duration spikeFor;
+
+    final Duration warmup;
+    final Duration duration;
+
+    /**
+     * The maximum number of requests in flight - arrivals beyond this are dropped and counted, so an overloaded
+     * application cannot exhaust the load generator.
+     */
+    final int maxInFlight;
+
+    /**
+     * The relative weights of each operation in the mix.
+     */
+    final int availabilityWeight;
+    final int createWeight;
+    final int updateWeight;
+    final int cancelWeight;
+
+    final long seed;
+
+    private LoadTestOptions(Map<String, String> values) {
+        target = values.get("target");
+        rate = Double.parseDouble(values.getOrDefault("rate", "200"));
+        spikeRate = Double.parseDouble(values.getOrDefault("spike-rate", "0"));
+        spikeAt = seconds(values, "spike-at", 20);
+        spikeFor = seconds(values, "spike-for", 10);
+        warmup = seconds(values, "warmup", 10);
+        duration = seconds(values, "duration", 60);
+        maxInFlight = Integer.parseInt(values.getOrDefault("max-in-flight", "512"));
+        availabilityWeight = Integer.parseInt(values.getOrDefault("availability-weight", "70"));
+        createWeight = Integer.parseInt(values.getOrDefault("create-weight", "15"));
+        updateWeight = Integer.parseInt(values.getOrDefault("update-weight", "10"));
+        cancelWeight = Integer.parseInt(values.getOrDefault("cancel-weight", "5"));
+        seed = Long.parseLong(values.getOrDefault("seed", "42"));
+    }
+
+    static LoadTestOptions parse(String[] args) {
+
+        var values = new HashMap<String, String>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+
+        return new LoadTestOptions(values);
+    }
+
+    private static Duration seconds(Map<String, String> values, String name, long defaultSeconds) {
+        return Duration.ofSeconds(Long.parseLong(values.getOrDefault(name, String.valueOf(defaultSeconds))));
+    }
+
+    /**
+     * @param elapsed the time since the load test started, including warm-up
+     * @return the arrival rate at that time
+     */
+    double rateAt(Duration elapsed) {
+
+        var measuring = elapsed.minus(warmup);
+        if (spikeRate > 0 && measuring.compareTo(spikeAt) >= 0 && measuring.compareTo(spikeAt.plus(spikeFor)) < 0) {
+            return spikeRate;
+        }
+
+        return rate;
+    }
+
+    int totalWeight() {
+        return availabilityWeight + createWeight + updateWeight + cancelWeight;
+    }
+}
@@ -0,0 +1,102 @@
+package ca.andrewmccallum.novapacificisland.booking.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency and outcomes of one kind of request, safe to record from many threads.
+ */
+class OperationStats {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final Recorder latencies = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder badRequest = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder conflict = new LongAdder();
+    private final LongAdder unavailable = new LongAdder();
+    private final LongAdder otherStatus = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    OperationStats(String name) {
+        this.name = name;
+    }
+
+    void recordResponse(int status, long latencyNanos) {
+
+        latencies.recordValue(Math.min(latencyNanos, MAX_LATENCY_NANOS));
+        if (status >= 200 && status < 300) {
+            ok.increment();
+        } else if (status == 400) {
+            badRequest.increment();
+        } else if (status == 404) {
+            notFound.increment();
+        } else if (status == 409 || status == 412) {
+            conflict.increment();
+        } else if (status == 503) {
+            unavailable.increment();
+        } else {
+            otherStatus.increment();
+        }
+    }
+
+    void recordFailure(long latencyNanos) {
+        latencies.recordValue(Math.min(latencyNanos, MAX_LATENCY_NANOS));
+        failed.increment();
+    }
+
+    void recordDropped() {
+        dropped.increment();
+    }
+
+    /**
+     * Forget everything recorded so far, such as during warm-up.
+     */
+    void reset() {
+        latencies.reset();
+        var counters = new LongAdder[]{ok, badRequest, notFound, conflict, unavailable, otherStatus, failed, dropped};
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+    }
+
+    static String header() {
+        return String.format("%-14s %9s %9s %9s %9s %9s %9s %7s %7s %7s %7s %7s %7s %7s",
+                "operation", "count", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms",
+                "2xx", "400", "404", "409/412", "503", "other", "dropped");
+    }
+
+    String report(double seconds) {
+
+        Histogram histogram = latencies.getIntervalHistogram();
+        long count = histogram.getTotalCount();
+
+        return String.format("%-14s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %7s %7s %7s %7s %7s %7s %7d",
+                name, count, count / seconds,
+                millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()),
+                percent(ok, count), percent(badRequest, count), percent(notFound, count),
+                percent(conflict, count), percent(unavailable, count),
+                percent(otherStatus.sum() + failed.sum(), count),
+                dropped.sum());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static String percent(LongAdder counter, long count) {
+        return percent(counter.sum(), count);
+    }
+
+    private static String percent(long value, long count) {
+        return count == 0 ? "-" : String.format("%.1f%%", 100.0 * value / count);
+    }
+}
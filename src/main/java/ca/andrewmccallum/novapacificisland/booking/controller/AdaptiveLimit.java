@@ -0,0 +1,137 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A concurrency limit which tunes itself from the latency of the calls it admits, shedding calls beyond it.
+ * <p>
+ * The long-run average latency stands in for the latency with nothing queued - queueing pulls it up only slowly,
+ * while each call's latency is compared against it as soon as it completes. The limit grows by about its square root
+ * while calls are no slower than that, and shrinks in proportion as they slow, down to half each time. Calls the
+ * bulkhead behind it turns away back it off multiplicatively. Latency only grows the limit while it is being used, as
+ * calls made well under the limit say nothing about what it could be.
+ */
+class AdaptiveLimit {
+
+    private static final String ERROR_SHED = "Too many booking requests are in progress, please retry.";
+
+    /**
+     * How much slower than the long-run average calls may be before the limit shrinks.
+     */
+    private static final double TOLERANCE = 1.5;
+    /**
+     * The weight given to each call's latency in the long-run average, so roughly the last few hundred calls count.
+     */
+    private static final double LONG_RUN_WEIGHT = 2.0 / 601;
+    /**
+     * The weight given to each new estimate of the limit.
+     */
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final LongSupplier nanoTime;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * The limit, with its fractional part kept so that it moves smoothly. Guarded by this.
+     */
+    private double estimate;
+    /**
+     * The long-run average latency. Guarded by this.
+     */
+    private double averageNanos;
+    private volatile int limit;
+
+    AdaptiveLimit(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, System::nanoTime);
+    }
+
+    AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, LongSupplier nanoTime) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.nanoTime = nanoTime;
+        this.estimate = Math.min(maxLimit, Math.max(minLimit, initialLimit));
+        this.limit = (int) estimate;
+    }
+
+    /**
+     * Admit a call, which must be followed by {@link #release(long)} or {@link #dropped()} once it completes.
+     * @return the time the call was admitted
+     * @throws RejectedExecutionException if as many calls as the limit are already in flight
+     */
+    long acquire() {
+
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                shed.increment();
+                throw new RejectedExecutionException(ERROR_SHED);
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+
+        return nanoTime.getAsLong();
+    }
+
+    /**
+     * Complete a call, adjusting the limit by its latency.
+     * @param start the time it was admitted
+     */
+    void release(long start) {
+        long latencyNanos = nanoTime.getAsLong() - start;
+        sample(latencyNanos, inFlight.getAndDecrement());
+    }
+
+    /**
+     * Complete a call which was turned away downstream, backing off the limit.
+     */
+    void dropped() {
+
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            update(estimate * BACKOFF);
+        }
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the number of calls shed since the limit was created
+     */
+    long shed() {
+        return shed.sum();
+    }
+
+    private synchronized void sample(long latencyNanos, int inFlight) {
+
+        averageNanos = averageNanos == 0
+                ? latencyNanos
+                : averageNanos + LONG_RUN_WEIGHT * (latencyNanos - averageNanos);
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * averageNanos / Math.max(1, latencyNanos)));
+        double next = estimate * gradient + Math.sqrt(estimate);
+
+        if (next > estimate && inFlight < estimate / 2) {
+            return;
+        }
+
+        update(estimate * (1 - SMOOTHING) + next * SMOOTHING);
+    }
+
+    private void update(double next) {
+        estimate = Math.min(maxLimit, Math.max(minLimit, next));
+        limit = (int) estimate;
+    }
+}
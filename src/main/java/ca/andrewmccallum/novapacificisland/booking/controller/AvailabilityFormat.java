@@ -0,0 +1,61 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.util.Arrays;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityBitmapDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityRangesDTO;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+
+/**
+ * The representations availability can be returned in, chosen by the {@code format} query parameter or else by the
+ * Accept header. Listing every free date stays the default.
+ */
+enum AvailabilityFormat {
+
+    LIST(MediaType.APPLICATION_JSON),
+    RANGES(MediaType.valueOf(AvailabilityRangesDTO.MEDIA_TYPE)),
+    BITMAP(MediaType.valueOf(AvailabilityBitmapDTO.MEDIA_TYPE));
+
+    private final MediaType mediaType;
+
+    AvailabilityFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @param format the {@code format} query parameter, if any
+     * @param accept the Accept header, if any
+     * @return the representation asked for
+     * @throws IllegalArgumentException if the format is not one of these
+     */
+    static AvailabilityFormat select(@Nullable String format, @Nullable String accept) {
+
+        if (format != null) {
+            return Arrays.stream(values())
+                    .filter(f -> f.name().equalsIgnoreCase(format))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Invalid format provided."));
+        }
+
+        if (accept != null) {
+            try {
+                for (MediaType acceptedType : MediaType.parseMediaTypes(accept)) {
+                    for (AvailabilityFormat candidate : values()) {
+                        if (candidate != LIST && candidate.mediaType.equalsTypeAndSubtype(acceptedType)) {
+                            return candidate;
+                        }
+                    }
+                }
+            } catch (InvalidMediaTypeException e) {
+                // leave it to content negotiation to reject
+            }
+        }
+
+        return LIST;
+    }
+}
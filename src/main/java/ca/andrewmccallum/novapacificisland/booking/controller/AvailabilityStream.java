@@ -0,0 +1,206 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityChangeDTO;
+import ca.andrewmccallum.novapacificisland.booking.service.BookingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes changes to availability to subscribers as server-sent events.
+ * <p>
+ * Changes are handed to each subscriber's bounded buffer without blocking the writer which committed them, and sent
+ * from there by a small pool of sender threads. A subscriber too slow to keep up has its buffer dropped and is sent a
+ * {@code resync} event instead, after which it should read availability afresh - as it should on first subscribing.
+ */
+@Component
+class AvailabilityStream {
+
+    static final String EVENT_CHANGE = "change";
+    static final String EVENT_RESYNC = "resync";
+
+    private static final AtomicInteger SENDER_COUNT = new AtomicInteger();
+
+    private final BookingService bookingService;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    /**
+     * The subscribers, counted ahead of being added, so no more than the maximum are ever let in.
+     */
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final Consumer<List<AvailabilityChangeDTO>> listener = this::publish;
+
+    /**
+     * The number of changes buffered per subscriber before it must resync.
+     */
+    @Value("${booking.availability.stream.buffer:256}")
+    private int bufferSize;
+
+    /**
+     * The number of subscribers streamed to at once, beyond which subscriptions are refused.
+     */
+    @Value("${booking.availability.stream.max-subscribers:1000}")
+    private int maxSubscribers;
+
+    /**
+     * How long a subscription lasts before the subscriber must reconnect.
+     */
+    @Value("${booking.availability.stream.timeout-millis:600000}")
+    private long timeoutMillis;
+
+    @Value("${booking.availability.stream.senders:2}")
+    private int senders;
+
+    private ExecutorService sender;
+
+    @Autowired
+    AvailabilityStream(BookingService bookingService) {
+        this.bookingService = bookingService;
+    }
+
+    @PostConstruct
+    void start() {
+
+        sender = Executors.newFixedThreadPool(senders, r -> {
+            var thread = new Thread(r, "availability-stream-" + SENDER_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        bookingService.addOccupancyListener(listener);
+    }
+
+    @PreDestroy
+    void stop() {
+
+        bookingService.removeOccupancyListener(listener);
+        subscribers.forEach(s -> s.emitter.complete());
+        sender.shutdownNow();
+    }
+
+    /**
+     * @return an emitter streaming changes from now on, starting with a {@code resync} event
+     * @throws RejectedExecutionException if there are too many subscribers already
+     */
+    SseEmitter subscribe() {
+
+        if (subscriberCount.getAndUpdate(n -> n < maxSubscribers ? n + 1 : n) >= maxSubscribers) {
+            throw new RejectedExecutionException("Too many subscribers to availability changes.");
+        }
+
+        var subscriber = new Subscriber(new SseEmitter(timeoutMillis), bufferSize);
+        subscribers.add(subscriber);
+        subscriber.emitter.onCompletion(() -> remove(subscriber));
+        subscriber.emitter.onTimeout(subscriber.emitter::complete);
+        subscriber.emitter.onError(e -> remove(subscriber));
+
+        subscriber.resync();
+        return subscriber.emitter;
+    }
+
+    int subscribers() {
+        return subscribers.size();
+    }
+
+    /**
+     * Remove a subscriber, however many ways it is found gone.
+     */
+    private void remove(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            subscriberCount.decrementAndGet();
+        }
+    }
+
+    private void publish(List<AvailabilityChangeDTO> changes) {
+        subscribers.forEach(s -> s.offer(changes));
+    }
+
+    private final class Subscriber implements Runnable {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<AvailabilityChangeDTO> buffer;
+        private final AtomicBoolean resync = new AtomicBoolean();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, int bufferSize) {
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        void offer(List<AvailabilityChangeDTO> changes) {
+
+            for (AvailabilityChangeDTO change : changes) {
+                if (!buffer.offer(change)) {
+                    // too far behind - drop what's buffered and have it read availability afresh
+                    resync();
+                    return;
+                }
+            }
+
+            schedule();
+        }
+
+        void resync() {
+            buffer.clear();
+            resync.set(true);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // stopping
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+
+            try {
+                if (resync.getAndSet(false)) {
+                    // changes buffered since are newer than the version, so are still sent
+                    emitter.send(SseEmitter.event()
+                            .name(EVENT_RESYNC)
+                            .data(bookingService.getOccupancyVersion().orElse(0), MediaType.APPLICATION_JSON));
+                }
+
+                AvailabilityChangeDTO change;
+                while (!resync.get() && (change = buffer.poll()) != null) {
+                    emitter.send(SseEmitter.event()
+                            .id(String.valueOf(change.getVersion()))
+                            .name(EVENT_CHANGE)
+                            .data(change, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                // disconnected, or already completed
+                remove(this);
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+
+            // offered after draining, but before being unscheduled
+            if (resync.get() || !buffer.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -1,14 +1,32 @@
 package ca.andrewmccallum.novapacificisland.booking.controller;
 
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityBitmapDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityRangesDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityWindowDTO;
 import ca.andrewmccallum.novapacificisland.booking.dto.BookingDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.DatesUnavailableDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.HoldDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.StayDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.Versioned;
+import ca.andrewmccallum.novapacificisland.booking.dto.WaitlistDTO;
 import ca.andrewmccallum.novapacificisland.booking.service.BookingService;
+import ca.andrewmccallum.novapacificisland.booking.service.DatesUnavailableException;
+import ca.andrewmccallum.novapacificisland.booking.service.Rejection;
+import ca.andrewmccallum.novapacificisland.booking.service.Validation;
+import ca.andrewmccallum.novapacificisland.booking.service.VersionMismatchException;
+import ca.andrewmccallum.novapacificisland.booking.service.WritesOverloadedException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -22,69 +40,326 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+/**
+ * Reads and writes run on bulkheads of their own, off the servlet thread - see {@link Bulkheads}.
+ * <p>
+ * The rejections most requests meet under scraping or retry storms - malformed IDs and If-Match headers, new bookings
+ * with invalid or unavailable dates, and bookings retrieved which do not exist - are returned as {@link Rejection}s
+ * rather than thrown, so no stack traces are filled in for them. Anything rarer is still thrown, and answered by the
+ * exception handlers - as are the rejections of modifications and cancellations, which are only found as they are
+ * written.
+ */
 @RestController
 @RequestMapping(path = "/booking",
         produces = MediaType.APPLICATION_JSON_VALUE)
 public class BookingController {
 
     private final BookingService bookingService;
+    private final AvailabilityStream availabilityStream;
+    private static final Rejection INVALID_ID = Rejection.invalid("Invalid ID provided.");
+    private static final Rejection INVALID_IF_MATCH = Rejection.invalid("Invalid If-Match header provided.");
+    /**
+     * How long to wait before retrying a request turned away for load, when nothing better is known.
+     */
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final IdempotencyStore idempotencyStore;
+    private final Bulkheads bulkheads;
 
     @Autowired
-    public BookingController(BookingService bookingService) {
+    public BookingController(BookingService bookingService,
+                             AvailabilityStream availabilityStream,
+                             IdempotencyStore idempotencyStore,
+                             Bulkheads bulkheads) {
         this.bookingService = bookingService;
+        this.availabilityStream = availabilityStream;
+        this.idempotencyStore = idempotencyStore;
+        this.bulkheads = bulkheads;
     }
 
     @Operation(description = "")
     @ApiResponse(responseCode = "400", description = "Bad request")
     //@ApiResponse(responseCode = "200", content = @Content(examples = @ExampleObject(value = )))
-    @GetMapping(value = "/availability")
-    public ResponseEntity<List<LocalDate>> availability(@RequestParam LocalDate fromDate, @RequestParam(required = false) LocalDate toDate) {
-        return ResponseEntity.ok(bookingService.findAvailability(fromDate, toDate));
+    @ApiResponse(responseCode = "304", description = "Availability unchanged since the ETag in If-None-Match")
+    @GetMapping(value = "/availability",
+            produces = {MediaType.APPLICATION_JSON_VALUE, AvailabilityRangesDTO.MEDIA_TYPE, AvailabilityBitmapDTO.MEDIA_TYPE})
+    public CompletableFuture<ResponseEntity<?>> availability(@RequestParam LocalDate fromDate,
+                                                             @RequestParam(required = false) LocalDate toDate,
+                                                             @RequestParam(required = false) String format,
+                                                             WebRequest request) {
+
+        var availabilityFormat = AvailabilityFormat.select(format, request.getHeader(HttpHeaders.ACCEPT));
+        var response = ResponseEntity.ok()
+                .contentType(availabilityFormat.getMediaType())
+                .varyBy(HttpHeaders.ACCEPT);
+
+        // read the version first, so the availability found is never older than it
+        var version = bookingService.getOccupancyVersion();
+        if (version.isPresent()) {
+
+            // each representation needs an ETag of its own
+            var eTag = fromDate + "/" + (toDate == null ? "" : toDate) + "/" + version.getAsLong()
+                    + (availabilityFormat == AvailabilityFormat.LIST ? "" : "/" + availabilityFormat.name().toLowerCase());
+            if (request.checkNotModified(eTag)) {
+                // the response already carries the status and ETag
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED).build());
+            }
+            response.eTag(eTag);
+        }
+
+        return bulkheads.read("availability", () -> {
+            switch (availabilityFormat) {
+                case RANGES:
+                    return response.body(bookingService.findAvailabilityRanges(fromDate, toDate));
+                case BITMAP:
+                    return response.body(bookingService.findAvailabilityBitmap(fromDate, toDate));
+                default:
+                    return response.body(bookingService.findAvailability(fromDate, toDate));
+            }
+        });
+    }
+
+    @Operation(description = "Finds availability in many ranges of dates at once, all as of the same moment.")
+    @ApiResponse(responseCode = "400", description = "Bad request")
+    @PostMapping(value = "/availability/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<List<LocalDate>>>> availabilityBatch(@RequestBody List<AvailabilityWindowDTO> windows) {
+        return bulkheads.read("availabilityBatch", () -> ResponseEntity.ok(bookingService.findAvailability(windows)));
+    }
+
+    @Operation(description = "Finds the dates a stay of the given number of nights can be booked from.")
+    @ApiResponse(responseCode = "400", description = "Bad request")
+    @GetMapping(value = "/availability/starts")
+    public CompletableFuture<ResponseEntity<List<LocalDate>>> stayStarts(@RequestParam LocalDate fromDate,
+                                                                         @RequestParam(required = false) LocalDate toDate,
+                                                                         @RequestParam int nights) {
+        return bulkheads.read("stayStarts", () ->
+                ResponseEntity.ok(bookingService.findStayStarts(fromDate, toDate, nights)));
+    }
+
+    @Operation(description = "Streams nights becoming occupied or free. Read availability on each `resync` event, "
+            + "then apply `change` events newer than the version it was read at.")
+    @ApiResponse(responseCode = "501", description = "Changes cannot be streamed while occupancy is shared")
+    @ApiResponse(responseCode = "503", description = "Too many subscribers")
+    @GetMapping(value = "/availability/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> availabilityStream() {
+
+        // changes made by other instances sharing the database are never seen here
+        if (bookingService.getOccupancyVersion().isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+                    .build();
+        }
+
+        return ResponseEntity.ok(availabilityStream.subscribe());
     }
 
+    @ApiResponse(responseCode = "400", description = "Bad request, or the dates are unavailable - then with the "
+            + "nearest stays of the same length which are not")
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<UUID> create(@Validated @RequestBody BookingDTO booking) {
-        return ResponseEntity
+    public CompletableFuture<ResponseEntity<?>> create(@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                                       @Validated @RequestBody BookingDTO booking) {
+
+        // a retry with a key must be replayed its response even once its own booking has taken the nights, so only
+        // those without one are validated up front
+        if (idempotencyKey == null) {
+            return bulkheads.write("create", () -> {
+                var created = bookingService.tryCreateBooking(booking);
+                if (!created.isValid()) {
+                    return rejected(created.getRejection());
+                }
+
+                return ResponseEntity
+                        .status(HttpStatus.CREATED)
+                        .body(created.getValue());
+            });
+        }
+
+        // a retry waits for the first attempt off the bulkhead, so never holds one of its threads
+        return idempotencyStore.execute(idempotencyKey, List.of("create", booking),
+                () -> bulkheads.write("create", () -> ResponseEntity
+                        .status(HttpStatus.CREATED)
+                        .body(bookingService.createBooking(booking))));
+    }
+
+    @Operation(description = "Holds the nights of a stay for a few minutes, until confirmed as a booking or released.")
+    @ApiResponse(responseCode = "400", description = "Bad request, or the dates are unavailable - then with the "
+            + "nearest stays of the same length which are not")
+    @PostMapping(value = "/holds", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<HoldDTO>> hold(@Validated @RequestBody BookingDTO booking) {
+        return bulkheads.write("hold", () -> ResponseEntity
+                .status(HttpStatus.CREATED)
+                .body(bookingService.holdBooking(booking)));
+    }
+
+    @ApiResponse(responseCode = "404", description = "Hold not found, or expired")
+    @PostMapping("/holds/{holdId}/confirm")
+    public CompletableFuture<ResponseEntity<?>> confirmHold(@PathVariable("holdId") String holdId,
+                                                            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+
+        var parsed = parseUUID(holdId);
+        if (!parsed.isValid()) {
+            return completedRejection(parsed);
+        }
+
+        UUID uuid = parsed.getValue();
+
+        return idempotencyStore.execute(idempotencyKey, List.of("confirmHold", uuid),
+                () -> bulkheads.write("confirmHold", () -> ResponseEntity
+                        .status(HttpStatus.CREATED)
+                        .body(bookingService.confirmHold(uuid))));
+    }
+
+    @ApiResponse(responseCode = "404", description = "Hold not found, or expired")
+    @DeleteMapping("/holds/{holdId}")
+    public CompletableFuture<ResponseEntity<?>> releaseHold(@PathVariable("holdId") String holdId) {
+
+        var parsed = parseUUID(holdId);
+        if (!parsed.isValid()) {
+            return completedRejection(parsed);
+        }
+
+        UUID uuid = parsed.getValue();
+
+        return bulkheads.write("releaseHold", () -> {
+            bookingService.releaseHold(uuid);
+            return ResponseEntity.noContent()
+                    .build();
+        });
+    }
+
+    @Operation(description = "Waits for the nights of a stay to be freed, then holds them. Poll the entry for its hold.")
+    @ApiResponse(responseCode = "400", description = "Bad request")
+    @ApiResponse(responseCode = "503", description = "The waitlist is full")
+    @PostMapping(value = "/waitlist", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<WaitlistDTO>> joinWaitlist(@Validated @RequestBody BookingDTO booking) {
+        return bulkheads.write("joinWaitlist", () -> ResponseEntity
                 .status(HttpStatus.CREATED)
-                .body(bookingService.createBooking(booking));
+                .body(bookingService.joinWaitlist(booking)));
+    }
+
+    @ApiResponse(responseCode = "404", description = "Waitlist entry not found, or its hold has ended")
+    @GetMapping("/waitlist/{waitlistId}")
+    public CompletableFuture<ResponseEntity<?>> retrieveWaitlisted(@PathVariable("waitlistId") String waitlistId) {
+
+        var parsed = parseUUID(waitlistId);
+        if (!parsed.isValid()) {
+            return completedRejection(parsed);
+        }
+
+        UUID uuid = parsed.getValue();
+
+        return bulkheads.read("retrieveWaitlisted", () -> ResponseEntity.ok(bookingService.getWaitlisted(uuid)));
+    }
+
+    @ApiResponse(responseCode = "404", description = "Waitlist entry not found, or already promoted to a hold")
+    @DeleteMapping("/waitlist/{waitlistId}")
+    public CompletableFuture<ResponseEntity<?>> leaveWaitlist(@PathVariable("waitlistId") String waitlistId) {
+
+        var parsed = parseUUID(waitlistId);
+        if (!parsed.isValid()) {
+            return completedRejection(parsed);
+        }
+
+        UUID uuid = parsed.getValue();
+
+        return bulkheads.write("leaveWaitlist", () -> {
+            bookingService.leaveWaitlist(uuid);
+            return ResponseEntity.noContent()
+                    .build();
+        });
     }
 
     @GetMapping("/{bookingId}")
-    public ResponseEntity<BookingDTO> retrieve(@PathVariable("bookingId") String bookingId) {
+    public CompletableFuture<ResponseEntity<?>> retrieve(@PathVariable("bookingId") String bookingId) {
 
-        UUID uuid = parseUUID(bookingId);
+        var parsed = parseUUID(bookingId);
+        if (!parsed.isValid()) {
+            return completedRejection(parsed);
+        }
 
-        return ResponseEntity.ok(bookingService.getBooking(uuid));
+        UUID uuid = parsed.getValue();
+
+        return bulkheads.read("retrieve", () -> {
+            var found = bookingService.findVersionedBooking(uuid);
+            if (!found.isValid()) {
+                return rejected(found.getRejection());
+            }
+
+            var booking = found.getValue();
+            return ResponseEntity.ok()
+                    .eTag(String.valueOf(booking.getVersion()))
+                    .body(booking.getValue());
+        });
     }
 
     @DeleteMapping("/{bookingId}")
-    public ResponseEntity<BookingDTO> cancel(@PathVariable("bookingId") String bookingId) {
+    public CompletableFuture<ResponseEntity<?>> cancel(@PathVariable("bookingId") String bookingId) {
 
-        UUID uuid = parseUUID(bookingId);
+        var parsed = parseUUID(bookingId);
+        if (!parsed.isValid()) {
+            return completedRejection(parsed);
+        }
 
-        bookingService.cancelBooking(uuid);
-        return ResponseEntity.noContent()
-                .build();
+        UUID uuid = parsed.getValue();
+
+        return bulkheads.write("cancel", () -> {
+            bookingService.cancelBooking(uuid);
+            return ResponseEntity.noContent()
+                    .build();
+        });
     }
 
     @PatchMapping("/{bookingId}")
-    public ResponseEntity<BookingDTO> modify(@PathVariable("bookingId") String bookingId, @RequestBody BookingDTO bookingDTO) {
+    @ApiResponse(responseCode = "412", description = "Booking modified since the version in If-Match")
+    public CompletableFuture<ResponseEntity<?>> modify(@PathVariable("bookingId") String bookingId,
+                                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                       @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                                       @RequestBody BookingDTO bookingDTO) {
 
-        UUID uuid = parseUUID(bookingId);
+        var parsedId = parseUUID(bookingId);
+        if (!parsedId.isValid()) {
+            return completedRejection(parsedId);
+        }
 
-        return ResponseEntity.ok(bookingService.updateBooking(uuid, bookingDTO));
+        var parsedIfMatch = parseIfMatch(ifMatch);
+        if (!parsedIfMatch.isValid()) {
+            return completedRejection(parsedIfMatch);
+        }
+
+        UUID uuid = parsedId.getValue();
+        Long expectedVersion = parsedIfMatch.getValue();
+
+        // a retry of a modification made with If-Match would otherwise fail, as the version has moved on
+        var fingerprint = Arrays.asList("modify", uuid, expectedVersion, bookingDTO);
+        return idempotencyStore.execute(idempotencyKey, fingerprint, () -> bulkheads.write("modify", () -> {
+            Versioned<BookingDTO> booking;
+            try {
+                booking = bookingService.updateBooking(uuid, bookingDTO, expectedVersion);
+            } catch (DatesUnavailableException e) {
+                // no alternatives are suggested to a modification, so it is rejected in plain text as ever
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+
+            return ResponseEntity.ok()
+                    .eTag(String.valueOf(booking.getVersion()))
+                    .body(booking.getValue());
+        }));
     }
 
     @ExceptionHandler(IllegalArgumentException.class)
     private ResponseEntity<String> handleIllegalArgumentException(IllegalArgumentException e) {
+        return badRequest(e.getMessage());
+    }
 
-        return ResponseEntity.badRequest()
-                .contentType(MediaType.TEXT_PLAIN)
-                .body(e.getMessage());
+    @ExceptionHandler(DatesUnavailableException.class)
+    private ResponseEntity<DatesUnavailableDTO> handleDatesUnavailableException(DatesUnavailableException e) {
+        return datesUnavailable(e.getMessage(), e.getAlternatives());
     }
 
     @ExceptionHandler(NoSuchElementException.class)
@@ -94,6 +369,43 @@ public class BookingController {
                 .build();
     }
 
+    @ExceptionHandler(VersionMismatchException.class)
+    private ResponseEntity<String> handleVersionMismatchException(VersionMismatchException e) {
+
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    private ResponseEntity<String> handleOptimisticLockingFailureException(OptimisticLockingFailureException e) {
+
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body("Booking is being modified concurrently, please retry.");
+    }
+
+    @ExceptionHandler(WritesOverloadedException.class)
+    private ResponseEntity<String> handleWritesOverloadedException(WritesOverloadedException e) {
+
+        // Retry-After is in whole seconds, so round up
+        long retryAfterSeconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    private ResponseEntity<String> handleRejectedExecutionException(RejectedExecutionException e) {
+
+        // shed, a full bulkhead, waitlist, write queue or idempotency store - all clear as requests complete
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     private ResponseEntity<String> handleMethodArgumentNotValidException(MethodArgumentNotValidException e) {
 
@@ -109,11 +421,59 @@ public class BookingController {
                 .body(e.getMessage());
     }
 
-    private static UUID parseUUID(String id) {
-        try {
-            return UUID.fromString(id);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException("Invalid ID provided.", e);
+    /**
+     * @return the response to a rejection, as the exception handlers would respond to the exception it stands in for
+     */
+    private static ResponseEntity<?> rejected(Rejection rejection) {
+        switch (rejection.getKind()) {
+            case DATES_UNAVAILABLE:
+                return datesUnavailable(rejection.getMessage(), rejection.getAlternatives());
+            case NOT_FOUND:
+                return ResponseEntity.notFound()
+                        .build();
+            default:
+                return badRequest(rejection.getMessage());
         }
     }
+
+    private static CompletableFuture<ResponseEntity<?>> completedRejection(Validation<?> validation) {
+        return CompletableFuture.completedFuture(rejected(validation.getRejection()));
+    }
+
+    private static ResponseEntity<String> badRequest(String message) {
+        return ResponseEntity.badRequest()
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(message);
+    }
+
+    private static ResponseEntity<DatesUnavailableDTO> datesUnavailable(String message, List<StayDTO> alternatives) {
+        return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new DatesUnavailableDTO(message, alternatives));
+    }
+
+    private static Validation<UUID> parseUUID(String id) {
+        var uuid = UuidParser.parse(id);
+        return uuid != null ? Validation.valid(uuid) : Validation.rejected(INVALID_ID);
+    }
+
+    /**
+     * Parse an If-Match header holding a single strong ETag, as returned by this controller.
+     * @return the version, or null if the header is absent or matches any version
+     */
+    private static Validation<Long> parseIfMatch(String ifMatch) {
+
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return Validation.valid(null);
+        }
+
+        // versions are never negative, and never run to more digits than a long holds
+        var eTag = ifMatch.trim();
+        if (eTag.length() < 3 || eTag.length() > 20 || !eTag.startsWith("\"") || !eTag.endsWith("\"")
+                || !eTag.chars().skip(1).limit(eTag.length() - 2).allMatch(c -> c >= '0' && c <= '9')) {
+            return Validation.rejected(INVALID_IF_MATCH);
+        }
+
+        return Validation.valid(Long.parseLong(eTag.substring(1, eTag.length() - 1)));
+    }
 }
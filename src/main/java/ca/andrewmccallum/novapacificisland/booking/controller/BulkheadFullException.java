@@ -0,0 +1,15 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a bulkhead's queue is full, as distinct from a request rejected further downstream.
+ */
+class BulkheadFullException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    BulkheadFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,101 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Separate thread pools for reads and writes, so requests piling up behind one never starve the other of threads.
+ * <p>
+ * Requests are handed off from the servlet thread, which is freed to serve others while they run. Each pool has a
+ * bounded queue, beyond which requests are rejected straight away. Before that, each endpoint sheds requests beyond
+ * its {@link ConcurrencyLimits adaptive limit}, which shrinks as it slows.
+ * <p>
+ * A write waits on its thread to be admitted by the service, so the writes bulkhead has threads enough for the writes
+ * admitted and those queued for admission - with fewer, writes would queue here instead, out of reach of its bounded
+ * wait and the retry time it turns writes away with.
+ */
+@Component
+class Bulkheads {
+
+    /**
+     * Counts requests rejected by a full bulkhead, tagged with its name.
+     */
+    static final String REJECTIONS = "booking.bulkhead.rejections";
+
+    private final ConcurrencyLimits limits;
+    private final ThreadPoolExecutor reads;
+    private final ThreadPoolExecutor writes;
+
+    @Autowired
+    Bulkheads(ConcurrencyLimits limits,
+              MeterRegistry meterRegistry,
+              @Value("${booking.bulkheads.reads.threads:16}") int readThreads,
+              @Value("${booking.bulkheads.reads.queue:256}") int readQueue,
+              @Value("${booking.bulkheads.writes.threads:72}") int writeThreads,
+              @Value("${booking.bulkheads.writes.queue:64}") int writeQueue) {
+        this.limits = limits;
+        this.reads = bulkhead("reads", readThreads, readQueue, meterRegistry);
+        this.writes = bulkhead("writes", writeThreads, writeQueue, meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        reads.shutdownNow();
+        writes.shutdownNow();
+    }
+
+    /**
+     * @param endpoint the endpoint whose limit the read counts against
+     * @return a future of the result of the read, run on the reads bulkhead
+     * @throws RejectedExecutionException if the endpoint's limit is reached, or the reads bulkhead is full
+     */
+    <T> CompletableFuture<T> read(String endpoint, Supplier<T> read) {
+        return limits.limit(endpoint, () -> CompletableFuture.supplyAsync(read, reads));
+    }
+
+    /**
+     * @param endpoint the endpoint whose limit the write counts against
+     * @return a future of the result of the write, run on the writes bulkhead
+     * @throws RejectedExecutionException if the endpoint's limit is reached, or the writes bulkhead is full
+     */
+    <T> CompletableFuture<T> write(String endpoint, Supplier<T> write) {
+        return limits.limit(endpoint, () -> CompletableFuture.supplyAsync(write, writes));
+    }
+
+    private static ThreadPoolExecutor bulkhead(String name, int threads, int queue, MeterRegistry meterRegistry) {
+
+        var rejections = Counter.builder(REJECTIONS)
+                .tag("bulkhead", name)
+                .register(meterRegistry);
+        var threadCount = new AtomicInteger();
+
+        var executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue),
+                r -> {
+                    var thread = new Thread(r, "booking-" + name + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (r, e) -> {
+                    rejections.increment();
+                    throw new BulkheadFullException("Too many booking " + name + " are in progress, please retry.");
+                });
+
+        // pool size, active threads, queue depth and completed tasks
+        new ExecutorServiceMetrics(executor, "booking." + name, Tags.empty()).bindTo(meterRegistry);
+        return executor;
+    }
+}
@@ -0,0 +1,92 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * An {@link AdaptiveLimit} for each endpoint, so an endpoint slowing down sheds its own calls without taking others'
+ * capacity.
+ */
+@Component
+class ConcurrencyLimits {
+
+    /**
+     * The current limit of each endpoint, tagged with the endpoint.
+     */
+    static final String LIMIT_GAUGE = "booking.limit";
+    /**
+     * The number of calls in flight to each endpoint, tagged with the endpoint.
+     */
+    static final String IN_FLIGHT_GAUGE = "booking.limit.in-flight";
+    /**
+     * Counts calls shed by each endpoint's limit, tagged with the endpoint.
+     */
+    static final String SHED = "booking.limit.shed";
+
+    private final Map<String, AdaptiveLimit> limits = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+
+    @Autowired
+    ConcurrencyLimits(MeterRegistry meterRegistry,
+                      @Value("${booking.limits.initial:20}") int initialLimit,
+                      @Value("${booking.limits.min:4}") int minLimit,
+                      @Value("${booking.limits.max:200}") int maxLimit) {
+        this.meterRegistry = meterRegistry;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Make a call to the endpoint if its limit admits it, its latency then adjusting the limit. Only the bulkhead
+     * turning the call away backs the limit off - calls the service rejects, such as when writes are overloaded or the
+     * waitlist is full, took their latency like any other.
+     * @throws RejectedExecutionException if the endpoint's limit is reached
+     */
+    <T> CompletableFuture<T> limit(String endpoint, Supplier<CompletableFuture<T>> call) {
+
+        var limit = limits.computeIfAbsent(endpoint, this::register);
+        long start = limit.acquire();
+
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (BulkheadFullException e) {
+            limit.dropped();
+            throw e;
+        } catch (RuntimeException | Error e) {
+            limit.release(start);
+            throw e;
+        }
+
+        return future.whenComplete((result, e) -> limit.release(start));
+    }
+
+    private AdaptiveLimit register(String endpoint) {
+
+        var limit = new AdaptiveLimit(initialLimit, minLimit, maxLimit);
+
+        Gauge.builder(LIMIT_GAUGE, limit, AdaptiveLimit::limit)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT_GAUGE, limit, AdaptiveLimit::inFlight)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        FunctionCounter.builder(SHED, limit, AdaptiveLimit::shed)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        return limit;
+    }
+}
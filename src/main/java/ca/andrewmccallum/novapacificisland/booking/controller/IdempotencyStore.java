@@ -0,0 +1,186 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Responses to requests made with an {@code Idempotency-Key} header, so a client retrying a request it never saw the
+ * response to is answered as the first attempt was, without making it again.
+ * <p>
+ * A retry arriving while the first attempt is still in progress is answered once it completes, without holding a
+ * thread while it waits. Only successful responses are kept - a failed attempt forgets its key, so it may be retried.
+ * Keys expire after a while, oldest first. Once the maximum number are stored, the oldest answered key makes room for
+ * a new one - only while every key stored is still in progress are requests with a new key turned away, rather than
+ * made without being stored, as a retry of them would be made again.
+ */
+@Component
+class IdempotencyStore {
+
+    static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    /**
+     * Every key lives as long, so in insertion order the entries are also in order of expiry.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final long ttlNanos;
+    private final int maxKeys;
+    private final LongSupplier nanoTime;
+
+    @Autowired
+    IdempotencyStore(@Value("${booking.idempotency.ttl-seconds:3600}") long ttlSeconds,
+                     @Value("${booking.idempotency.max-keys:100000}") int maxKeys) {
+        this(Duration.ofSeconds(ttlSeconds), maxKeys, System::nanoTime);
+    }
+
+    IdempotencyStore(Duration ttl, int maxKeys, LongSupplier nanoTime) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxKeys = maxKeys;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Make a request, unless made already with the same key.
+     * @param key the idempotency key, or null to make the request regardless
+     * @param fingerprint identifies the request, so a key cannot be reused for another
+     * @param request makes the request
+     * @return a future of the response to the first request made with the key, failing as it did
+     * @throws IllegalArgumentException if the key is invalid, or was used for a different request
+     * @throws RejectedExecutionException if the maximum number of keys are stored, and all still in progress
+     */
+    <T> CompletableFuture<T> execute(@Nullable String key, Object fingerprint, Supplier<CompletableFuture<T>> request) {
+
+        if (key == null) {
+            return request.get();
+        }
+
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Invalid " + HEADER + " header provided.");
+        }
+
+        var entry = new Entry(fingerprint);
+        var existing = putIfAbsent(key, entry);
+        if (existing != null) {
+
+            if (!existing.fingerprint.equals(fingerprint)) {
+                throw new IllegalArgumentException(HEADER + " has already been used for a different request.");
+            }
+
+            return replay(existing);
+        }
+
+        CompletableFuture<T> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException | Error e) {
+            forget(key, entry, e);
+            throw e;
+        }
+
+        return response.whenComplete((r, e) -> {
+            if (e == null) {
+                entry.response.complete(r);
+            } else {
+                forget(key, entry, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            }
+        });
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the live entry for the key, or null if the entry provided was stored in its place
+     * @throws RejectedExecutionException if there is no room for it
+     */
+    @Nullable
+    private synchronized Entry putIfAbsent(String key, Entry entry) {
+
+        long now = nanoTime.getAsLong();
+        evictExpired(now);
+
+        var existing = entries.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (entries.size() >= maxKeys && !evictOldestAnswered()) {
+            throw new RejectedExecutionException("Too many requests with an " + HEADER + " are in progress, please retry.");
+        }
+
+        entry.expiresAt = now + ttlNanos;
+        entries.put(key, entry);
+        return null;
+    }
+
+    /**
+     * Remove the expired entries, which all come before those yet to expire.
+     */
+    private void evictExpired(long now) {
+
+        var iterator = entries.values().iterator();
+        while (iterator.hasNext() && iterator.next().isExpired(now)) {
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Remove the oldest entry already answered, passing over only those in progress - no more than there are requests
+     * in flight.
+     * @return whether one was removed
+     */
+    private boolean evictOldestAnswered() {
+
+        var iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().response.isDone()) {
+                iterator.remove();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void forget(String key, Entry entry, Throwable cause) {
+
+        synchronized (this) {
+            entries.remove(key, entry);
+        }
+        entry.response.completeExceptionally(cause);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> replay(Entry existing) {
+        return existing.response.thenApply(r -> (T) r);
+    }
+
+    private static final class Entry {
+
+        private final Object fingerprint;
+        private final CompletableFuture<Object> response = new CompletableFuture<>();
+        /**
+         * Only read and written while holding the store's lock.
+         */
+        private long expiresAt;
+
+        Entry(Object fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.util.Arrays;
+import java.util.UUID;
+import org.springframework.lang.Nullable;
+
+/**
+ * Parses UUIDs without throwing for those which are invalid, unlike {@link UUID#fromString(String)} - so requests with
+ * malformed IDs are cheap to reject.
+ * <p>
+ * Accepts five groups of hex digits separated by dashes, each group no longer than in the canonical form. Leading
+ * zeros may be left out, as {@link UUID#fromString(String)} allows.
+ */
+final class UuidParser {
+
+    private static final int[] GROUP_LENGTHS = {8, 4, 4, 4, 12};
+    private static final byte[] HEX_DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(HEX_DIGITS, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_DIGITS[Character.forDigit(i, 16)] = (byte) i;
+            HEX_DIGITS[Character.toUpperCase(Character.forDigit(i, 16))] = (byte) i;
+        }
+    }
+
+    private UuidParser() {
+    }
+
+    /**
+     * @return the UUID, or null if the ID is not one
+     */
+    @Nullable
+    static UUID parse(@Nullable String id) {
+
+        if (id == null || id.length() > 36) {
+            return null;
+        }
+
+        // only the canonical form fills every group
+        if (id.length() == 36) {
+            return parseCanonical(id);
+        }
+
+        long mostSigBits = 0;
+        long leastSigBits = 0;
+        long value = 0;
+        int group = 0;
+        int digits = 0;
+        for (int i = 0; i <= id.length(); i++) {
+            char c = i < id.length() ? id.charAt(i) : '-';
+            if (c != '-') {
+                int digit = c < HEX_DIGITS.length ? HEX_DIGITS[c] : -1;
+                if (digit < 0 || ++digits > GROUP_LENGTHS[group]) {
+                    return null;
+                }
+                value = value << 4 | digit;
+                continue;
+            }
+
+            // the end of a group, or of the ID
+            if (digits == 0) {
+                return null;
+            }
+
+            switch (group) {
+                case 0:
+                    mostSigBits = value << 32;
+                    break;
+                case 1:
+                    mostSigBits |= value << 16;
+                    break;
+                case 2:
+                    mostSigBits |= value;
+                    break;
+                case 3:
+                    leastSigBits = value << 48;
+                    break;
+                default:
+                    leastSigBits |= value;
+                    return i == id.length() ? new UUID(mostSigBits, leastSigBits) : null;
+            }
+
+            group++;
+            value = 0;
+            digits = 0;
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static UUID parseCanonical(String id) {
+
+        if (id.charAt(8) != '-' || id.charAt(13) != '-' || id.charAt(18) != '-' || id.charAt(23) != '-') {
+            return null;
+        }
+
+        long group0 = parseHex(id, 0, 8);
+        long group1 = parseHex(id, 9, 13);
+        long group2 = parseHex(id, 14, 18);
+        long group3 = parseHex(id, 19, 23);
+        long group4 = parseHex(id, 24, 36);
+        if ((group0 | group1 | group2 | group3 | group4) < 0) {
+            return null;
+        }
+
+        return new UUID(group0 << 32 | group1 << 16 | group2, group3 << 48 | group4);
+    }
+
+    /**
+     * @return the value of the hex digits, or -1 if any are not
+     */
+    private static long parseHex(String id, int from, int to) {
+
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = id.charAt(i);
+            int digit = c < HEX_DIGITS.length ? HEX_DIGITS[c] : -1;
+            if (digit < 0) {
+                return -1;
+            }
+            value = value << 4 | digit;
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,110 @@
+package ca.andrewmccallum.novapacificisland.booking.data;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.MonthDay;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+
+/**
+ * Generates synthetic bookings for scale testing, reproducibly for a given seed.
+ * <p>
+ * Stays of one to three nights follow one another from the start date, denser through the summer and holiday peak
+ * seasons than the rest of the year. Some stays are cancelled, leaving their nights free as a real cancellation
+ * would. There is only one property, so each night is booked at most once - millions of bookings span thousands of
+ * years.
+ */
+public class BookingDataGenerator {
+
+    /**
+     * The maximum number of nights of a stay, as allowed by the booking service.
+     */
+    static final int MAX_NIGHTS = 3;
+
+    /**
+     * The chance of a stay starting on a free night, in and out of peak season.
+     */
+    private static final double OCCUPANCY_PEAK = 0.9;
+    private static final double OCCUPANCY_OFF_PEAK = 0.4;
+    /**
+     * The chance of a stay having been cancelled.
+     */
+    private static final double CANCELLATION_RATE = 0.1;
+
+    private static final MonthDay HOLIDAYS_START = MonthDay.of(Month.DECEMBER, 20);
+    private static final MonthDay HOLIDAYS_END = MonthDay.of(Month.JANUARY, 3);
+
+    private static final String[] FIRST_NAMES =
+            {"Alex", "Sam", "Jordan", "Taylor", "Morgan", "Casey", "Riley", "Jamie", "Avery", "Quinn"};
+    private static final String[] LAST_NAMES =
+            {"Smith", "Tremblay", "Nguyen", "Martin", "Roy", "Wilson", "Singh", "Gagnon", "Lee", "Brown"};
+
+    private final Random random;
+    private long number;
+
+    public BookingDataGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generate bookings in order of their stay. The stream must be consumed in order, and only once.
+     * @param from the first night which may be booked
+     * @param count the number of bookings
+     * @return the bookings, with IDs assigned
+     */
+    public Stream<Booking> generate(LocalDate from, long count) {
+        return Stream.iterate(nextBooking(from), b -> nextBooking(b.getCheckoutDate()))
+                .limit(count);
+    }
+
+    private Booking nextBooking(LocalDate from) {
+
+        var checkinDate = from;
+        while (true) {
+            if (random.nextDouble() >= occupancy(checkinDate)) {
+                checkinDate = checkinDate.plusDays(1);
+                continue;
+            }
+
+            var checkoutDate = checkinDate.plusDays(1 + random.nextInt(MAX_NIGHTS));
+            if (random.nextDouble() < CANCELLATION_RATE) {
+                // cancelled, so its nights went unbooked
+                checkinDate = checkoutDate;
+                continue;
+            }
+
+            return booking(checkinDate, checkoutDate);
+        }
+    }
+
+    private Booking booking(LocalDate checkinDate, LocalDate checkoutDate) {
+
+        var firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+        var lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        var booking = new Booking(new UUID(random.nextLong(), random.nextLong()),
+                checkinDate,
+                checkoutDate,
+                String.format("%s.%s.%d@example.com", firstName, lastName, number++).toLowerCase(),
+                firstName + " " + lastName);
+        booking.setVersion(0L);
+
+        return booking;
+    }
+
+    private static double occupancy(LocalDate night) {
+        return isPeakSeason(night) ? OCCUPANCY_PEAK : OCCUPANCY_OFF_PEAK;
+    }
+
+    static boolean isPeakSeason(LocalDate night) {
+
+        var month = night.getMonth();
+        if (month == Month.JUNE || month == Month.JULY || month == Month.AUGUST) {
+            return true;
+        }
+
+        var monthDay = MonthDay.from(night);
+        return !monthDay.isBefore(HOLIDAYS_START) || !monthDay.isAfter(HOLIDAYS_END);
+    }
+}
@@ -0,0 +1,97 @@
+package ca.andrewmccallum.novapacificisland.booking.data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import lombok.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Inserts bookings, and the nights they occupy, with batched JDBC - far quicker than through JPA for millions of rows.
+ * Bookings must not share nights with each other or those already stored.
+ */
+public class BookingDataWriter {
+
+    private static final int BATCH_SIZE = 1_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BookingDataWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param bookings the bookings to insert, with IDs and versions assigned
+     * @return the number of bookings inserted
+     */
+    public long insert(Stream<Booking> bookings) {
+
+        var batch = new ArrayList<Booking>(BATCH_SIZE);
+        var count = 0L;
+        for (var iterator = bookings.iterator(); iterator.hasNext(); ) {
+            batch.add(iterator.next());
+            if (batch.size() == BATCH_SIZE || !iterator.hasNext()) {
+                insertBatch(batch);
+                count += batch.size();
+                batch.clear();
+            }
+        }
+
+        return count;
+    }
+
+    private void insertBatch(List<Booking> batch) {
+
+        jdbcTemplate.batchUpdate(
+                "insert into booking (id, version, checkin_date, checkout_date, email, full_name)"
+                        + " values (?, ?, ?, ?, ?, ?)",
+                batch,
+                batch.size(),
+                (ps, b) -> {
+                    ps.setBytes(1, toBytes(b.getId()));
+                    ps.setLong(2, b.getVersion());
+                    ps.setDate(3, Date.valueOf(b.getCheckinDate()));
+                    ps.setDate(4, Date.valueOf(b.getCheckoutDate()));
+                    ps.setString(5, b.getEmail());
+                    ps.setString(6, b.getFullName());
+                });
+
+        var nights = new ArrayList<Night>(batch.size() * BookingDataGenerator.MAX_NIGHTS);
+        batch.forEach(b -> b.getCheckinDate().datesUntil(b.getCheckoutDate())
+                .forEach(d -> nights.add(new Night(b.getId(), d))));
+        jdbcTemplate.batchUpdate(
+                "insert into booking_night (id, booking_id, night) values (?, ?, ?)",
+                nights,
+                nights.size(),
+                (ps, n) -> {
+                    // derived from the booking and night, so the same bookings always give the same rows
+                    var name = n.getBookingId() + "/" + n.getNight();
+                    var id = UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8));
+                    ps.setBytes(1, toBytes(id));
+                    ps.setBytes(2, toBytes(n.getBookingId()));
+                    ps.setDate(3, Date.valueOf(n.getNight()));
+                });
+    }
+
+    /**
+     * The UUID as stored by Hibernate in a binary column.
+     */
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    @Value
+    private static class Night {
+        UUID bookingId;
+        LocalDate night;
+    }
+}
@@ -0,0 +1,45 @@
+package ca.andrewmccallum.novapacificisland.booking.data;
+
+import java.time.LocalDate;
+import ca.andrewmccallum.novapacificisland.booking.BookingApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Fills the configured database with synthetic bookings, then exits. The default in-memory database is gone once this
+ * exits, so point it at a persistent one, for example:
+ * <pre>
+ * ./gradlew generateBookings --args='--count=1000000 --seed=42 --from=2000-01-01
+ *     --spring.datasource.url=jdbc:h2:file:./build/booking --spring.jpa.hibernate.ddl-auto=update'
+ * </pre>
+ */
+public final class GenerateBookingData {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GenerateBookingData.class);
+
+    private GenerateBookingData() {
+    }
+
+    public static void main(String[] args) {
+
+        try (var context = new SpringApplicationBuilder(BookingApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args)) {
+
+            var environment = context.getEnvironment();
+            var count = environment.getProperty("count", Long.class, 100_000L);
+            var seed = environment.getProperty("seed", Long.class, 0L);
+            var from = LocalDate.parse(environment.getProperty("from", LocalDate.now().toString()));
+
+            var started = System.nanoTime();
+            var bookings = new BookingDataGenerator(seed).generate(from, count);
+            var inserted = new BookingDataWriter(context.getBean(JdbcTemplate.class)).insert(bookings);
+
+            LOGGER.info("Inserted {} bookings from {} in {} ms.",
+                    inserted, from, (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ca.andrewmccallum.novapacificisland.booking.dto;
+
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.BitSet;
+import lombok.Value;
+
+/**
+ * Availability as a bitmap of the nights in the window, one bit per night.
+ */
+@Value
+public class AvailabilityBitmapDTO {
+
+    public static final String MEDIA_TYPE = "application/vnd.novapacificisland.availability-bitmap+json";
+
+    LocalDate from;
+    LocalDate to;
+    /**
+     * Base64 of the bitmap, where bit {@code n} is set when the night {@code n} days after {@code from} is free. Bits
+     * are numbered from the least significant bit of the first byte, and trailing bytes of occupied nights are
+     * omitted.
+     */
+    String free;
+
+    /**
+     * @param from the first night of the window (inclusive)
+     * @param to the last night of the window (exclusive)
+     * @param freeNights the free nights in the window, as words of bits numbered as the bytes of the bitmap are
+     */
+    public static AvailabilityBitmapDTO of(LocalDate from, LocalDate to, long[] freeNights) {
+        var bytes = BitSet.valueOf(freeNights).toByteArray();
+        return new AvailabilityBitmapDTO(from, to, Base64.getEncoder().encodeToString(bytes));
+    }
+}
@@ -0,0 +1,16 @@
+package ca.andrewmccallum.novapacificisland.booking.dto;
+
+import java.time.LocalDate;
+import lombok.Value;
+
+/**
+ * A night becoming occupied or free, as of an occupancy version. Changes carry the night's new state rather than a
+ * difference, so applying one twice, or over availability already read at that version, does no harm.
+ */
+@Value
+public class AvailabilityChangeDTO {
+
+    LocalDate night;
+    boolean occupied;
+    long version;
+}
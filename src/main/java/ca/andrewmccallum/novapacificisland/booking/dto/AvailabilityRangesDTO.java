@@ -0,0 +1,43 @@
+package ca.andrewmccallum.novapacificisland.booking.dto;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Availability as runs of consecutive free nights, which stays small however long the window.
+ */
+@Value
+public class AvailabilityRangesDTO {
+
+    public static final String MEDIA_TYPE = "application/vnd.novapacificisland.availability-ranges+json";
+
+    LocalDate from;
+    LocalDate to;
+    /**
+     * Each run of free nights as a pair of its first night (inclusive) and the night after its last (exclusive).
+     */
+    List<List<LocalDate>> free;
+
+    /**
+     * @param from the first night of the window (inclusive)
+     * @param to the last night of the window (exclusive)
+     * @param freeNights the free nights in the window, as words of bits where bit {@code n} of word {@code i} is set
+     * when the night {@code 64 * i + n} days after {@code from} is free
+     */
+    public static AvailabilityRangesDTO of(LocalDate from, LocalDate to, long[] freeNights) {
+
+        // skip from the start of each run straight to its end
+        var bits = BitSet.valueOf(freeNights);
+        var runs = new ArrayList<List<LocalDate>>();
+        for (int start = bits.nextSetBit(0); start >= 0; start = bits.nextSetBit(start)) {
+            int end = bits.nextClearBit(start);
+            runs.add(List.of(from.plusDays(start), from.plusDays(end)));
+            start = end;
+        }
+
+        return new AvailabilityRangesDTO(from, to, runs);
+    }
+}
@@ -0,0 +1,17 @@
+package ca.andrewmccallum.novapacificisland.booking.dto;
+
+import java.time.LocalDate;
+import lombok.Value;
+import org.springframework.lang.Nullable;
+
+/**
+ * A range of dates to find availability in. If {@code toDate} is not specified, defaults to a month following
+ * {@code fromDate}.
+ */
+@Value
+public class AvailabilityWindowDTO {
+
+    LocalDate fromDate;
+    @Nullable
+    LocalDate toDate;
+}
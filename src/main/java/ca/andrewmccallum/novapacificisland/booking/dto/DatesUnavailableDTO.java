@@ -0,0 +1,14 @@
+package ca.andrewmccallum.novapacificisland.booking.dto;
+
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Why a stay cannot be booked, with the nearest stays of the same length which can be.
+ */
+@Value
+public class DatesUnavailableDTO {
+
+    String message;
+    List<StayDTO> alternatives;
+}
@@ -0,0 +1,15 @@
+package ca.andrewmccallum.novapacificisland.booking.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+import lombok.Value;
+
+/**
+ * A tentative hold on the nights of a stay, which lapses unless confirmed before it expires.
+ */
+@Value
+public class HoldDTO {
+
+    UUID holdId;
+    Instant expiresAt;
+}
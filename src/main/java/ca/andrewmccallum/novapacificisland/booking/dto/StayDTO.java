@@ -0,0 +1,14 @@
+package ca.andrewmccallum.novapacificisland.booking.dto;
+
+import java.time.LocalDate;
+import lombok.Value;
+
+/**
+ * The dates of a stay, without the details of who is staying.
+ */
+@Value
+public class StayDTO {
+
+    LocalDate checkinDate;
+    LocalDate checkoutDate;
+}
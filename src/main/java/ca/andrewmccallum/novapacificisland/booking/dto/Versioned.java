@@ -0,0 +1,14 @@
+package ca.andrewmccallum.novapacificisland.booking.dto;
+
+import lombok.Value;
+
+/**
+ * A value along with the version of the entity it was read from, as exposed by an ETag.
+ * @param <T> the type of value
+ */
+@Value
+public class Versioned<T> {
+
+    T value;
+    long version;
+}
@@ -0,0 +1,16 @@
+package ca.andrewmccallum.novapacificisland.booking.dto;
+
+import java.util.UUID;
+import lombok.Value;
+import org.springframework.lang.Nullable;
+
+/**
+ * A stay waiting for its nights to be freed, and the hold it was promoted to once they were.
+ */
+@Value
+public class WaitlistDTO {
+
+    UUID waitlistId;
+    @Nullable
+    HoldDTO hold;
+}
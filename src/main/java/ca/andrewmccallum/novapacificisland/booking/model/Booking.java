@@ -1,28 +1,40 @@
 package ca.andrewmccallum.novapacificisland.booking.model;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.time.LocalDate;
 import java.util.UUID;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 
 @Data
-@AllArgsConstructor
 @Entity
+@Table(indexes = @Index(name = "idx_booking_checkout_dates", columnList = "checkout_date, checkin_date"))
 public class Booking {
 
     public Booking() {
         // for Jackson
     }
 
+    public Booking(UUID id, LocalDate checkinDate, LocalDate checkoutDate, String email, String fullName) {
+        this.id = id;
+        this.checkinDate = checkinDate;
+        this.checkoutDate = checkoutDate;
+        this.email = email;
+        this.fullName = fullName;
+    }
+
     public Booking(Booking copyFrom) {
         this.id = copyFrom.getId();
+        this.version = copyFrom.getVersion();
         this.checkinDate = copyFrom.getCheckinDate();
         this.checkoutDate = copyFrom.getCheckoutDate();
         this.email = copyFrom.getEmail();
@@ -33,10 +45,18 @@ public class Booking {
     @GeneratedValue(strategy = GenerationType.AUTO)
     private UUID id;
 
+    /**
+     * Incremented on every update, so concurrent updates cannot overwrite each other unnoticed.
+     */
+    @Version
+    private Long version;
+
     @NotNull
+    @Column(name = "checkin_date")
     private LocalDate checkinDate;
 
     @NotNull
+    @Column(name = "checkout_date")
     private LocalDate checkoutDate;
 
     @NotBlank
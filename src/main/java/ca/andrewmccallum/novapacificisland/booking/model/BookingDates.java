@@ -0,0 +1,14 @@
+package ca.andrewmccallum.novapacificisland.booking.model;
+
+import java.time.LocalDate;
+import lombok.Value;
+
+/**
+ * The dates of a stay, without any of the guest details.
+ */
+@Value
+public class BookingDates {
+
+    LocalDate checkinDate;
+    LocalDate checkoutDate;
+}
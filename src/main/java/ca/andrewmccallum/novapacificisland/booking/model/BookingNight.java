@@ -0,0 +1,56 @@
+package ca.andrewmccallum.novapacificisland.booking.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.validation.constraints.NotNull;
+import java.time.LocalDate;
+import java.util.UUID;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * A night occupied by a booking. The database allows at most one per date, so two bookings can never share a night
+ * regardless of how many instances of the application are writing.
+ */
+@Data
+@Entity
+@Table(name = "booking_night",
+        uniqueConstraints = @UniqueConstraint(name = "uk_booking_night_night", columnNames = "night"),
+        indexes = @Index(name = "idx_booking_night_booking", columnList = "booking_id"))
+public class BookingNight {
+
+    public BookingNight() {
+        // for JPA
+    }
+
+    public BookingNight(Booking booking, LocalDate night) {
+        this.booking = booking;
+        this.night = night;
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private UUID id;
+
+    @NotNull
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "booking_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Booking booking;
+
+    @NotNull
+    @Column(name = "night")
+    private LocalDate night;
+
+}
@@ -0,0 +1,51 @@
+package ca.andrewmccallum.novapacificisland.booking.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import ca.andrewmccallum.novapacificisland.booking.model.BookingNight;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface BookingNightRepository extends CrudRepository<BookingNight, UUID> {
+
+    /**
+     * Get the occupied nights within the provided window, answered from the unique index on the night alone.
+     * @param startDate the start date (inclusive)
+     * @param endDate the end date (exclusive)
+     * @return a list of occupied nights, in order
+     */
+    @Transactional(readOnly = true)
+    @Query("select n.night from BookingNight n where n.night >= :startDate and n.night < :endDate order by n.night")
+    List<LocalDate> findOccupiedNights(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    /**
+     * Delete the nights of a booking which fall outside its stay, such as after its dates change.
+     * @param bookingId the booking ID
+     * @param checkinDate the check-in date (inclusive)
+     * @param checkoutDate the check-out date (exclusive)
+     * @return the number of nights deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from BookingNight n where n.booking.id = :bookingId"
+            + " and (n.night < :checkinDate or n.night >= :checkoutDate)")
+    int deleteNightsOutside(@Param("bookingId") UUID bookingId,
+                            @Param("checkinDate") LocalDate checkinDate,
+                            @Param("checkoutDate") LocalDate checkoutDate);
+
+    /**
+     * Delete all nights of a booking.
+     * @param bookingId the booking ID
+     * @return the number of nights deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from BookingNight n where n.booking.id = :bookingId")
+    int deleteNights(@Param("bookingId") UUID bookingId);
+}
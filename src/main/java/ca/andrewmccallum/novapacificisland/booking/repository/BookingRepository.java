@@ -4,7 +4,11 @@ import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
 import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import ca.andrewmccallum.novapacificisland.booking.model.BookingDates;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -12,11 +16,23 @@ import org.springframework.transaction.annotation.Transactional;
 public interface BookingRepository extends CrudRepository<Booking, UUID> {
 
     /**
-     * Get bookings with a check-in date within the provided window.
-     * @param startDate the start date (inclusive)
-     * @param endDate the end date (exclusive)
-     * @return a list of bookings
+     * Get the dates of bookings which have not yet checked out, a range scan of {@code idx_booking_checkout_dates}.
+     * @param date the date after which check-out must occur (exclusive)
+     * @return a list of booking dates
      */
     @Transactional(readOnly = true)
-    List<Booking> findBookingsByCheckinDateBetween(LocalDate startDate, LocalDate endDate);
+    @Query("select new ca.andrewmccallum.novapacificisland.booking.model.BookingDates(b.checkinDate, b.checkoutDate)"
+            + " from Booking b where b.checkoutDate > :date")
+    List<BookingDates> findBookingDatesByCheckoutDateAfter(@Param("date") LocalDate date);
+
+    /**
+     * Delete a booking, only if it is still at the version it was read at.
+     * @param id the booking ID
+     * @param version the version read
+     * @return the number of bookings deleted - none if it has since changed, or is gone
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Booking b where b.id = :id and b.version = :version")
+    int deleteByIdAndVersion(@Param("id") UUID id, @Param("version") Long version);
 }
@@ -0,0 +1,125 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.Value;
+
+/**
+ * Cache of availability by window, kept consistent with the {@link OccupancyIndex} by invalidating the windows
+ * overlapping each change to it.
+ * <p>
+ * A lookup which computes its list concurrently with a change may miss that change's invalidation, so it only keeps
+ * its entry if no invalidation happened meanwhile. All entries are evicted when the day rolls over, as windows
+ * starting in the past can no longer be queried.
+ */
+class AvailabilityCache {
+
+    /**
+     * The maximum number of windows cached - beyond this, lookups are computed without being cached.
+     */
+    static final int MAX_ENTRIES = 1024;
+    /**
+     * The longest window cached, so the cache holds at most this many nights per entry - longer windows, which any
+     * client may ask for, are computed without being cached.
+     */
+    static final int MAX_WINDOW_NIGHTS = 92;
+
+    private final Clock clock;
+    private final ConcurrentHashMap<Window, List<LocalDate>> entries = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile LocalDate today;
+
+    AvailabilityCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @param from the first night (inclusive)
+     * @param to the last night (exclusive)
+     * @param compute finds the free nights in the window when not cached
+     * @return a list of the free nights, in order, immutable unless the window is too long to cache
+     */
+    List<LocalDate> get(LocalDate from, LocalDate to, Supplier<List<LocalDate>> compute) {
+
+        if (from.until(to, ChronoUnit.DAYS) > MAX_WINDOW_NIGHTS) {
+            misses.increment();
+            return compute.get();
+        }
+
+        evictIfDayChanged();
+
+        var window = new Window(from, to);
+        var cached = entries.get(window);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        long invalidationsBefore = invalidations.get();
+        var computed = List.copyOf(compute.get());
+        if (entries.size() < MAX_ENTRIES) {
+            entries.put(window, computed);
+
+            // a change invalidating after this put removes the entry itself
+            if (invalidations.get() != invalidationsBefore) {
+                entries.remove(window, computed);
+            }
+        }
+
+        return computed;
+    }
+
+    /**
+     * Invalidate the windows which include any of the nights changed. Call after the change is visible in the index.
+     * @param from the first night changed (inclusive)
+     * @param to the last night changed (exclusive)
+     */
+    void invalidate(LocalDate from, LocalDate to) {
+        invalidations.incrementAndGet();
+        entries.keySet().removeIf(w -> w.getFrom().isBefore(to) && from.isBefore(w.getTo()));
+    }
+
+    /**
+     * Invalidate every window, such as when the index is rebuilt.
+     */
+    void clear() {
+        invalidations.incrementAndGet();
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    private void evictIfDayChanged() {
+
+        var now = LocalDate.now(clock);
+        if (!now.equals(today)) {
+            today = now;
+            clear();
+        }
+    }
+
+    @Value
+    private static class Window {
+        LocalDate from;
+        LocalDate to;
+    }
+}
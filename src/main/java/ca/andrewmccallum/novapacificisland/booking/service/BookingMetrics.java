@@ -0,0 +1,230 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.lang.Nullable;
+
+/**
+ * Meters for the booking service, so that time spent waiting on the write path can be told apart from time in the
+ * database. Request handling as a whole, including serialisation, is timed by Spring Boot as
+ * {@code http.server.requests}.
+ */
+class BookingMetrics {
+
+    /**
+     * Times each public service method, tagged with the method and the exception it failed with, if any. Overloads
+     * which only delegate are timed as the method they delegate to.
+     */
+    static final String SERVICE_TIMER = "booking.service";
+    /**
+     * Times the transactions writes are persisted in, from the first statement to commit.
+     */
+    static final String PERSIST_TIMER = "booking.writes.persist";
+    /**
+     * The number of writes persisted per transaction, which is always one without the write pipeline.
+     */
+    static final String BATCH_SUMMARY = "booking.writes.batch";
+    /**
+     * Times how long nights are claimed for, from before the booking is persisted until the index takes over.
+     */
+    static final String CLAIM_TIMER = "booking.nights.claim";
+    /**
+     * Counts bookings rejected, tagged with the reason.
+     */
+    static final String REJECTIONS = "booking.rejections";
+    /**
+     * The number of nights claimed by writes in progress.
+     */
+    static final String CLAIMED_GAUGE = "booking.nights.claimed";
+    /**
+     * The number of writes queued for the write pipeline.
+     */
+    static final String QUEUED_GAUGE = "booking.writes.queued";
+    /**
+     * The number of holds awaiting confirmation.
+     */
+    static final String HOLDS_GAUGE = "booking.holds";
+    /**
+     * The number of writes waiting to be admitted.
+     */
+    static final String ADMISSION_QUEUED_GAUGE = "booking.writes.admission.queued";
+    /**
+     * Counts writes turned away by admission control, tagged with whether too many were waiting or it waited too long.
+     */
+    static final String ADMISSION_REJECTIONS = "booking.writes.admission.rejections";
+    /**
+     * The number of stays on the waitlist, waiting or promoted to a hold.
+     */
+    static final String WAITLIST_GAUGE = "booking.waitlist";
+    /**
+     * Counts availability lookups, tagged with whether they were answered from the cache.
+     */
+    static final String CACHE_LOOKUPS = "booking.availability.cache.lookups";
+    /**
+     * The number of availability windows cached.
+     */
+    static final String CACHE_SIZE_GAUGE = "booking.availability.cache.size";
+
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry registry;
+    private final Timer persistTimer;
+    private final DistributionSummary batchSummary;
+    private final Timer claimTimer;
+    /**
+     * Service timers by method, then by exception - registered on first use, as looking a meter up in the registry
+     * builds its ID each time.
+     */
+    private final Map<String, Map<String, Timer>> serviceTimers = new ConcurrentHashMap<>();
+    /**
+     * Rejection counters by reason, registered on first use.
+     */
+    private final Map<String, Counter> rejectionCounters = new ConcurrentHashMap<>();
+
+    BookingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.persistTimer = Timer.builder(PERSIST_TIMER)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchSummary = DistributionSummary.builder(BATCH_SUMMARY)
+                .register(registry);
+        this.claimTimer = Timer.builder(CLAIM_TIMER)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    <T> void gauge(String name, T object, ToDoubleFunction<T> value) {
+        Gauge.builder(name, object, value).register(registry);
+    }
+
+    void cache(AvailabilityCache cache) {
+        gauge(CACHE_SIZE_GAUGE, cache, AvailabilityCache::size);
+        FunctionCounter.builder(CACHE_LOOKUPS, cache, AvailabilityCache::hits)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder(CACHE_LOOKUPS, cache, AvailabilityCache::misses)
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    void admission(WriteAdmission admission) {
+        gauge(ADMISSION_QUEUED_GAUGE, admission, WriteAdmission::queued);
+        FunctionCounter.builder(ADMISSION_REJECTIONS, admission, WriteAdmission::rejectedQueueFull)
+                .tag("reason", "queue_full")
+                .register(registry);
+        FunctionCounter.builder(ADMISSION_REJECTIONS, admission, WriteAdmission::rejectedTimeout)
+                .tag("reason", "timeout")
+                .register(registry);
+    }
+
+    <T> T time(String method, Supplier<T> operation) {
+
+        long start = registry.config().clock().monotonicTime();
+        var exception = NO_EXCEPTION;
+        try {
+            return operation.get();
+        } catch (RuntimeException e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            record(method, exception, start);
+        }
+    }
+
+    void time(String method, Runnable operation) {
+        time(method, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * Time an operation until the future it returns completes.
+     */
+    <T> CompletableFuture<T> timeAsync(String method, Supplier<CompletableFuture<T>> operation) {
+
+        long start = registry.config().clock().monotonicTime();
+        return operation.get().whenComplete((result, e) -> {
+            var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            record(method, cause == null ? NO_EXCEPTION : cause.getClass().getSimpleName(), start);
+        });
+    }
+
+    private void record(String method, String exception, long start) {
+        serviceTimer(method, exception)
+                .record(registry.config().clock().monotonicTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer serviceTimer(String method, String exception) {
+
+        var byException = serviceTimers.get(method);
+        if (byException == null) {
+            byException = serviceTimers.computeIfAbsent(method, m -> new ConcurrentHashMap<>());
+        }
+
+        var timer = byException.get(exception);
+        if (timer == null) {
+            timer = byException.computeIfAbsent(exception, e -> Timer.builder(SERVICE_TIMER)
+                    .tag("method", method)
+                    .tag("exception", e)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+
+        return timer;
+    }
+
+    <T> T timePersist(int batchSize, Supplier<T> persist) {
+        batchSummary.record(batchSize);
+        return persistTimer.record(persist);
+    }
+
+    void recordClaim(long nanos) {
+        claimTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Count a rejection.
+     * @param reason the reason to count it under
+     * @param message the message for the caller
+     * @return the exception to throw
+     */
+    IllegalArgumentException rejected(String reason, String message) {
+        return rejected(reason, message, null);
+    }
+
+    IllegalArgumentException rejected(String reason, String message, @Nullable Throwable cause) {
+        return rejected(reason, new IllegalArgumentException(message, cause));
+    }
+
+    <E extends RuntimeException> E rejected(String reason, E exception) {
+        rejected(reason);
+        return exception;
+    }
+
+    /**
+     * Count a rejection which is returned rather than thrown.
+     */
+    void rejected(String reason) {
+
+        var counter = rejectionCounters.get(reason);
+        if (counter == null) {
+            counter = rejectionCounters.computeIfAbsent(reason, r -> Counter.builder(REJECTIONS)
+                    .tag("reason", r)
+                    .register(registry));
+        }
+
+        counter.increment();
+    }
+}
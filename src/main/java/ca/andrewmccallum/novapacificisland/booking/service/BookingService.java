@@ -1,20 +1,60 @@
 package ca.andrewmccallum.novapacificisland.booking.service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.OptionalLong;
+import java.util.Queue;
 import java.util.UUID;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityBitmapDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityChangeDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityRangesDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityWindowDTO;
 import ca.andrewmccallum.novapacificisland.booking.dto.BookingDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.HoldDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.StayDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.Versioned;
+import ca.andrewmccallum.novapacificisland.booking.dto.WaitlistDTO;
 import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import ca.andrewmccallum.novapacificisland.booking.model.BookingNight;
+import ca.andrewmccallum.novapacificisland.booking.repository.BookingNightRepository;
 import ca.andrewmccallum.novapacificisland.booking.repository.BookingRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.lang.Nullable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * Service for managing bookings.
@@ -22,67 +62,895 @@ import org.springframework.stereotype.Service;
 @Service
 public class BookingService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingService.class);
+
     /**
      * The number of nights a booking may be made for.
      */
     private static final int BOOKING_MAX_NIGHTS = 3;
     /**
-     * The minimum number of days between booking and check-in.
+     * The minimum number of days between booking and check-in.
+     */
+    private static final int BOOKING_MIN_DAYS_FROM_TODAY = 1;
+    /**
+     * The number of date ranges availability may be found in at once.
+     */
+    private static final int AVAILABILITY_MAX_WINDOWS = 50;
+    /**
+     * The number of available stays suggested when those requested are not.
+     */
+    private static final int BOOKING_ALTERNATIVES = 3;
+    /**
+     * The time between checks for expired holds and waitlist entries, and so how late past its expiry a hold may lapse.
+     */
+    private static final Duration EXPIRY_TICK = Duration.ofSeconds(1);
+    /**
+     * The number of ticks in a turn of the expiry wheel, enough that typical holds expire within one turn.
+     */
+    private static final int EXPIRY_TICKS_PER_WHEEL = 512;
+    /**
+     * The number of stays which may wait for nights to be freed at once.
+     */
+    private static final int WAITLIST_MAX_ENTRIES = 10_000;
+    /**
+     * The number of times an update is attempted when concurrent updates keep getting there first.
+     */
+    private static final int UPDATE_MAX_ATTEMPTS = 3;
+    /**
+     * The initial delay before an update is retried, doubled for each attempt after.
+     */
+    private static final long UPDATE_BACKOFF_MILLIS = 10;
+
+    private static final String ERROR_BOOKING_NOT_FOUND = "Cannot find booking with specified ID.";
+    private static final String ERROR_DATES_UNAVAILABLE = "The date(s) requested are no longer available.";
+    private static final String ERROR_VERSION_MISMATCH = "Booking has been modified since the version provided.";
+    private static final String ERROR_HOLD_NOT_FOUND = "Cannot find hold with specified ID, it may have expired.";
+    private static final String ERROR_WAITLIST_NOT_FOUND = "Cannot find waitlist entry with specified ID.";
+
+    private final BookingRepository bookingRepository;
+    private final BookingNightRepository bookingNightRepository;
+    private final Clock clock;
+    private final TransactionTemplate transactionTemplate;
+    private final NightReservations nightReservations = new NightReservations();
+    private final OccupancyIndex occupancyIndex = new OccupancyIndex();
+    /**
+     * The nights held, shown to readers as occupied alongside those booked. Writers are kept off them by their claims.
+     */
+    private final OccupancyIndex heldNights = new OccupancyIndex();
+    private final AvailabilityCache availabilityCache;
+    /**
+     * Increased after every committed change to the occupancy index, once the change is visible to readers.
+     */
+    private final AtomicLong occupancyVersion = new AtomicLong();
+    private volatile LocalDate occupancyVersionDay;
+    private final List<Consumer<List<AvailabilityChangeDTO>>> occupancyListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Held while changing occupancy and taking the version of the change, so versions follow the order of changes.
+     */
+    private final Object occupancyLock = new Object();
+    /**
+     * Changes yet to be published, queued in version order while holding {@link #occupancyLock}.
+     */
+    private final Queue<List<AvailabilityChangeDTO>> unpublishedChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean publishing = new AtomicBoolean();
+    private final BookingMetrics metrics;
+    private final Map<UUID, Hold> holds = new ConcurrentHashMap<>();
+    private final TimingWheel expiryWheel = new TimingWheel(EXPIRY_TICK, EXPIRY_TICKS_PER_WHEEL, "booking-expiry");
+    private final Waitlist waitlist = new Waitlist();
+    /**
+     * Promotes waitlisted stays one at a time, so earlier stays are always offered nights first.
+     */
+    private final ExecutorService waitlistPromoter = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "booking-waitlist");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Whether other instances of the application write to the same database, in which case the in-memory occupancy
+     * is incomplete and the booking nights table is the only source of truth.
+     */
+    @Value("${booking.occupancy.shared:false}")
+    private boolean sharedOccupancy;
+
+    /**
+     * Whether writes go through a single-writer pipeline, which persists them in batches.
+     */
+    @Value("${booking.writes.pipeline.enabled:false}")
+    private boolean pipelineEnabled;
+
+    /**
+     * The number of writes the pipeline queues before rejecting more.
+     */
+    @Value("${booking.writes.pipeline.capacity:1024}")
+    private int pipelineCapacity;
+
+    /**
+     * The maximum number of writes the pipeline persists in one transaction.
+     */
+    @Value("${booking.writes.pipeline.max-batch:64}")
+    private int pipelineMaxBatch;
+
+    /**
+     * How long a hold keeps the nights of a stay before it lapses, unless confirmed.
+     */
+    @Value("${booking.holds.ttl-seconds:300}")
+    private long holdTtlSeconds;
+
+    @Nullable
+    private BookingWritePipeline writePipeline;
+
+    /**
+     * The number of writes made at once when not pipelined, or 0 to admit every write straight away.
+     */
+    @Value("${booking.writes.admission.max-concurrent:0}")
+    private int admissionMaxConcurrent;
+
+    /**
+     * The number of writes waiting for admission, beyond which more are rejected.
+     */
+    @Value("${booking.writes.admission.max-queued:64}")
+    private int admissionMaxQueued;
+
+    /**
+     * How long a write waits for admission before it is rejected.
+     */
+    @Value("${booking.writes.admission.max-wait-millis:2000}")
+    private long admissionMaxWaitMillis;
+
+    @Nullable
+    private WriteAdmission writeAdmission;
+
+    @Autowired
+    public BookingService(BookingRepository bookingRepository,
+                          BookingNightRepository bookingNightRepository,
+                          Clock clock,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry) {
+        this.bookingRepository = bookingRepository;
+        this.bookingNightRepository = bookingNightRepository;
+        this.clock = clock;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.availabilityCache = new AvailabilityCache(clock);
+        this.metrics = new BookingMetrics(meterRegistry);
+        metrics.cache(availabilityCache);
+        metrics.gauge(BookingMetrics.CLAIMED_GAUGE, nightReservations, NightReservations::claimed);
+        metrics.gauge(BookingMetrics.QUEUED_GAUGE, this, BookingService::queuedWrites);
+        metrics.gauge(BookingMetrics.HOLDS_GAUGE, holds, Map::size);
+        metrics.gauge(BookingMetrics.WAITLIST_GAUGE, waitlist, Waitlist::size);
+    }
+
+    @PostConstruct
+    void start() {
+
+        loadOccupancy();
+
+        if (pipelineEnabled) {
+            writePipeline = new BookingWritePipeline(pipelineCapacity, pipelineMaxBatch, this::persistAll);
+            writePipeline.start();
+        } else if (admissionMaxConcurrent > 0) {
+            writeAdmission = new WriteAdmission(admissionMaxConcurrent, admissionMaxQueued,
+                    Duration.ofMillis(admissionMaxWaitMillis));
+            metrics.admission(writeAdmission);
+        }
+
+        expiryWheel.start();
+        scheduleWaitlistExpiry();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        expiryWheel.stop();
+        waitlistPromoter.shutdownNow();
+        if (writePipeline != null) {
+            writePipeline.stop();
+        }
+    }
+
+    private int queuedWrites() {
+        var pipeline = writePipeline;
+        return pipeline == null ? 0 : pipeline.queued();
+    }
+
+    /**
+     * (Re)build the occupancy index from the stored bookings which have not yet checked out. Must not run concurrently
+     * with bookings being written.
+     */
+    void loadOccupancy() {
+
+        occupancyIndex.clear();
+        bookingRepository.findBookingDatesByCheckoutDateAfter(LocalDate.now(clock))
+                .forEach(b -> occupancyIndex.occupy(b.getCheckinDate(), b.getCheckoutDate()));
+        availabilityCache.clear();
+        occupancyVersion.incrementAndGet();
+    }
+
+    /**
+     * Listen for nights becoming occupied or free. Listeners are called on a thread committing a change, in the order
+     * of the changes' versions, so must not block.
+     * @param listener called with the nights changed by each booking made, moved or cancelled
+     */
+    public void addOccupancyListener(Consumer<List<AvailabilityChangeDTO>> listener) {
+        occupancyListeners.add(listener);
+    }
+
+    public void removeOccupancyListener(Consumer<List<AvailabilityChangeDTO>> listener) {
+        occupancyListeners.remove(listener);
+    }
+
+    /**
+     * The version of the availability, which changes whenever a booking is made, moved or cancelled. Availability
+     * found after reading a version is at least as recent as that version.
+     * @return the version, or empty if bookings made by other instances sharing the database cannot be tracked
+     */
+    public OptionalLong getOccupancyVersion() {
+
+        if (sharedOccupancy) {
+            return OptionalLong.empty();
+        }
+
+        // availability changes with the day too, as windows starting yesterday can no longer be queried
+        var today = LocalDate.now(clock);
+        if (!today.equals(occupancyVersionDay)) {
+            occupancyVersionDay = today;
+            occupancyVersion.incrementAndGet();
+        }
+
+        return OptionalLong.of(occupancyVersion.get());
+    }
+
+    /**
+     * Find the current availability given a range of dates. If {@code to} parameter is not specified, defaults to a month following {@code from}.
+     * @param from the date (inclusive) from which to query
+     * @param to the date (exclusive) to serve as upper bound of query
+     * @return a list of dates available
+     */
+    public List<LocalDate> findAvailability(LocalDate from, @Nullable LocalDate to) {
+        return metrics.time("findAvailability", () -> findFree(from, windowEnd(from, to)));
+    }
+
+    /**
+     * Find the current availability in each of many ranges of dates, all as of the same moment.
+     * @param windows the ranges of dates, as for {@link #findAvailability(LocalDate, LocalDate)}
+     * @return a list of the dates available in each range, in the order requested
+     * @throws IllegalArgumentException if any range is invalid, or too many are requested
+     */
+    public List<List<LocalDate>> findAvailability(List<AvailabilityWindowDTO> windows) {
+        return metrics.time("findAvailabilityBatch", () -> {
+
+            if (windows.isEmpty() || windows.size() > AVAILABILITY_MAX_WINDOWS) {
+                throw new IllegalArgumentException(
+                        "Between 1 and " + AVAILABILITY_MAX_WINDOWS + " date ranges must be requested.");
+            }
+
+            var resolved = new ArrayList<AvailabilityWindowDTO>(windows.size());
+            for (AvailabilityWindowDTO window : windows) {
+                if (window == null || window.getFromDate() == null) {
+                    throw new IllegalArgumentException("Each date range must have a `from` date.");
+                }
+                resolved.add(new AvailabilityWindowDTO(window.getFromDate(),
+                        windowEnd(window.getFromDate(), window.getToDate())));
+            }
+
+            // one read of the index, or of the database, for every window
+            var from = resolved.stream().map(AvailabilityWindowDTO::getFromDate).min(Comparator.naturalOrder()).get();
+            var to = resolved.stream().map(AvailabilityWindowDTO::getToDate).max(Comparator.naturalOrder()).get();
+            return occupancyOf(from, to).findFree(resolved).stream()
+                    .map(this::withoutHeld)
+                    .collect(Collectors.toList());
+        });
+    }
+
+    /**
+     * Find the current availability given a range of dates, as runs of free nights.
+     * @see #findAvailability(LocalDate, LocalDate)
+     */
+    public AvailabilityRangesDTO findAvailabilityRanges(LocalDate from, @Nullable LocalDate to) {
+        return metrics.time("findAvailabilityRanges", () -> {
+            var toDate = windowEnd(from, to);
+            return AvailabilityRangesDTO.of(from, toDate, findFreeBits(from, toDate));
+        });
+    }
+
+    /**
+     * Find the current availability given a range of dates, as a bitmap of free nights.
+     * @see #findAvailability(LocalDate, LocalDate)
+     */
+    public AvailabilityBitmapDTO findAvailabilityBitmap(LocalDate from, @Nullable LocalDate to) {
+        return metrics.time("findAvailabilityBitmap", () -> {
+            var toDate = windowEnd(from, to);
+            return AvailabilityBitmapDTO.of(from, toDate, findFreeBits(from, toDate));
+        });
+    }
+
+    /**
+     * Find the dates a stay can be booked from, with every night of the stay free, given a range of dates. Only dates
+     * which may be booked from today are included. If {@code to} parameter is not specified, defaults to a month
+     * following {@code from}.
+     * @param from the date (inclusive) from which to query
+     * @param to the date (exclusive) to serve as upper bound of query
+     * @param nights the number of nights of the stay
+     * @return a list of check-in dates
+     * @throws IllegalArgumentException if the dates are invalid, or more nights than allowed are requested
+     */
+    public List<LocalDate> findStayStarts(LocalDate from, @Nullable LocalDate to, int nights) {
+        return metrics.time("findStayStarts", () -> {
+
+            var toDate = windowEnd(from, to);
+
+            if (nights < 1 || nights > BOOKING_MAX_NIGHTS) {
+                throw new IllegalArgumentException("Stay must be between 1 and " + BOOKING_MAX_NIGHTS + " nights.");
+            }
+
+            return bookableStayStarts(from, toDate, nights);
+        });
+    }
+
+    private List<LocalDate> bookableStayStarts(LocalDate from, LocalDate toDate, int nights) {
+
+        // only check-in dates validateDates accepts
+        var today = LocalDate.now(clock);
+        var firstStart = max(from, today.plusDays(BOOKING_MIN_DAYS_FROM_TODAY));
+        var lastStart = min(toDate.minusDays(1), today.plusMonths(1));
+        if (lastStart.isBefore(firstStart)) {
+            return List.of();
+        }
+
+        // nights claimed or held are as unavailable as those booked
+        return occupancyOf(firstStart, lastStart.plusDays(nights))
+                .findStayStarts(firstStart, lastStart.plusDays(1), nights, nightReservations);
+    }
+
+    /**
+     * @return the occupancy index, or when shared, an index of the nights in the window read from the database
+     */
+    private OccupancyIndex occupancyOf(LocalDate from, LocalDate to) {
+
+        if (!sharedOccupancy) {
+            return occupancyIndex;
+        }
+
+        var occupancy = new OccupancyIndex();
+        bookingNightRepository.findOccupiedNights(from, to)
+                .forEach(d -> occupancy.occupy(d, d.plusDays(1)));
+        return occupancy;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    /**
+     * Validate an availability query.
+     * @return the date (exclusive) the query ends at
+     */
+    private LocalDate windowEnd(LocalDate from, @Nullable LocalDate to) {
+
+        var toDate = to == null ?
+                from.plusMonths(1) :
+                to;
+
+        if (from.isAfter(toDate)) {
+            throw new IllegalArgumentException("The `from` date must be before the `to` date.");
+        }
+
+        // ensure we're not exposing past bookings to competitors
+        if (from.isBefore(LocalDate.now(clock))) {
+            throw new IllegalArgumentException("The `from` date must not be in the past.");
+        }
+
+        return toDate;
+    }
+
+    private List<LocalDate> findFree(LocalDate from, LocalDate toDate) {
+
+        if (sharedOccupancy) {
+            var nightsOccupied = new HashSet<>(bookingNightRepository.findOccupiedNights(from, toDate));
+            return from.datesUntil(toDate)
+                    .filter(d -> !nightsOccupied.contains(d) && !heldNights.isOccupied(d))
+                    .collect(Collectors.toList());
+        }
+
+        return availabilityCache.get(from, toDate, () -> withoutHeld(occupancyIndex.findFree(from, toDate)));
+    }
+
+    /**
+     * @return the nights neither booked nor held in the window, as {@link OccupancyIndex#findFreeBits} has them
+     */
+    private long[] findFreeBits(LocalDate from, LocalDate toDate) {
+
+        long[] free = occupancyOf(from, toDate).findFreeBits(from, toDate);
+        long[] notHeld = heldNights.findFreeBits(from, toDate);
+        for (int i = 0; i < free.length; i++) {
+            free[i] &= notHeld[i];
+        }
+
+        return free;
+    }
+
+    /**
+     * @return the free nights provided, less those held
+     */
+    private List<LocalDate> withoutHeld(List<LocalDate> free) {
+        return free.stream()
+                .filter(d -> !heldNights.isOccupied(d))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Create a new booking, assuming latest availabilty agrees.
+     * @param bookingDTO the booking details
+     * @return the ID of the booking
+     * @throws IllegalArgumentException if date validations fail, more than three nights requested, or date(s) are unavailable
+     * @throws DatesUnavailableException if date(s) are unavailable, with the nearest stays of the same length which are not
+     */
+    public UUID createBooking(BookingDTO bookingDTO) {
+        return metrics.time("createBooking", () -> create(bookingDTO, true));
+    }
+
+    /**
+     * Create a new booking, returning rather than throwing the rejection of one {@link #validateBooking(BookingDTO)}
+     * rejects - validated once, rather than again as it is created.
+     * @param bookingDTO the booking details
+     * @return the ID of the booking, or why it was rejected
+     * @throws DatesUnavailableException if other writers took the nights after it was validated, with the nearest
+     * stays of the same length which are not
+     */
+    public Validation<UUID> tryCreateBooking(BookingDTO bookingDTO) {
+        return metrics.time("tryCreateBooking", () -> validateBooking(bookingDTO).map(valid -> create(valid, false)));
+    }
+
+    private UUID create(BookingDTO bookingDTO, boolean validate) {
+
+        if (writePipeline != null) {
+            return await(submitCreate(bookingDTO, validate));
+        }
+
+        try {
+            return writeAdmitted(() -> stageCreate(bookingDTO, validate)).getId();
+        } catch (DatesUnavailableException e) {
+            throw withAlternativesIfBookedElsewhere(bookingDTO, e);
+        }
+    }
+
+    /**
+     * Create a new booking, through the write pipeline when enabled.
+     * @param bookingDTO the booking details
+     * @return a future of the ID of the booking, failing as {@link #createBooking(BookingDTO)} would throw
+     */
+    public CompletableFuture<UUID> createBookingAsync(BookingDTO bookingDTO) {
+        return metrics.timeAsync("createBookingAsync", () -> submitCreate(bookingDTO, true));
+    }
+
+    private CompletableFuture<UUID> submitCreate(BookingDTO bookingDTO, boolean validate) {
+
+        if (writePipeline == null) {
+            return completed(() -> create(bookingDTO, validate));
+        }
+
+        var result = new CompletableFuture<UUID>();
+        writePipeline.submit(null, () -> stageCreate(bookingDTO, validate), Booking::getId)
+                .whenComplete((bookingId, e) -> {
+                    if (e == null) {
+                        result.complete(bookingId);
+                    } else if (e instanceof DatesUnavailableException) {
+                        result.completeExceptionally(
+                                withAlternativesIfBookedElsewhere(bookingDTO, (DatesUnavailableException) e));
+                    } else {
+                        result.completeExceptionally(e);
+                    }
+                });
+
+        return result;
+    }
+
+    /**
+     * Suggest the available stays of the same length nearest to those requested, as of a read taken where the request
+     * was rejected - its nights taken, as the rejection found them.
+     */
+    private DatesUnavailableException withAlternatives(BookingDTO bookingDTO, DatesUnavailableException e) {
+        return new DatesUnavailableException(e.getMessage(), e, alternativesTo(bookingDTO, bookableNights()));
+    }
+
+    /**
+     * Suggest alternatives to a create the database rejected, as the nights were booked elsewhere - one rejected
+     * here was already suggested them where it was.
+     */
+    private DatesUnavailableException withAlternativesIfBookedElsewhere(BookingDTO bookingDTO,
+                                                                         DatesUnavailableException e) {
+
+        return e.getCause() instanceof DataIntegrityViolationException ? withAlternatives(bookingDTO, e) : e;
+    }
+
+    /**
+     * @param bookable the nights read as the request was rejected
+     * @return the available stays of the same length nearest to those requested, nearest first
+     */
+    private List<StayDTO> alternativesTo(BookingDTO bookingDTO, BookableNights bookable) {
+
+        var checkinDate = bookingDTO.getCheckinDate();
+        int nights = checkinDate.until(bookingDTO.getCheckoutDate()).getDays();
+
+        // whatever has freed them since, they were not when rejected
+        bookable.take(checkinDate, bookingDTO.getCheckoutDate());
+
+        return bookable.findStayStarts(nights).stream()
+                .sorted(Comparator.comparingLong((LocalDate d) -> Math.abs(d.toEpochDay() - checkinDate.toEpochDay()))
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(BOOKING_ALTERNATIVES)
+                .map(d -> new StayDTO(d, d.plusDays(nights)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Read the nights bookable from tomorrow in one go, booked, claimed and held alike - from the first check-in date
+     * {@link #validateDates} accepts to the end of the longest stay from the last.
+     */
+    private BookableNights bookableNights() {
+
+        var today = LocalDate.now(clock);
+        var from = today.plusDays(BOOKING_MIN_DAYS_FROM_TODAY);
+        var lastStart = today.plusMonths(1);
+        var to = lastStart.plusDays(BOOKING_MAX_NIGHTS);
+
+        long[] unbooked = occupancyOf(from, to).findFreeBits(from, to);
+        long[] free = unbooked.clone();
+        nightReservations.clearClaimed(free, from);
+        return new BookableNights(from, lastStart, unbooked, free);
+    }
+
+    /**
+     * Check whether a booking would be created as it stands, returning rather than throwing the rejection if not - for
+     * callers expecting many requests to be rejected, as exceptions' stack traces are costly to fill in. Other writers
+     * may still take the nights before it is created, which {@link #createBooking(BookingDTO)} then throws for.
+     * @param bookingDTO the booking details
+     * @return the booking, or why it would be rejected - with the nearest stays of the same length which are available,
+     * if its dates are not
+     */
+    public Validation<BookingDTO> validateBooking(BookingDTO bookingDTO) {
+        return metrics.time("validateBooking", () -> {
+
+            var checkinDate = bookingDTO.getCheckinDate();
+            var checkoutDate = bookingDTO.getCheckoutDate();
+            var rejection = checkDates(checkinDate, checkoutDate);
+            if (rejection != null) {
+                return Validation.rejected(rejection);
+            }
+
+            // one read finds whether the nights are free, and if not, the alternatives - when shared, the nights
+            // booked elsewhere are only known to the database, so are only read for the alternatives
+            var bookable = sharedOccupancy ? null : bookableNights();
+            var reason = checkNightsFree(checkinDate, checkoutDate, bookable);
+            if (reason != null) {
+                metrics.rejected(reason);
+                return Validation.rejected(Rejection.datesUnavailable(ERROR_DATES_UNAVAILABLE,
+                        alternativesTo(bookingDTO, bookable != null ? bookable : bookableNights())));
+            }
+
+            return Validation.valid(bookingDTO);
+        });
+    }
+
+    /**
+     * Check nights as {@link #tryClaimDates(LocalDate, LocalDate, Booking)} would, without claiming them.
+     * @param bookable the nights read, or null to check only the claims on them
+     * @return null if they appear free, otherwise the reason they are not
+     */
+    @Nullable
+    private String checkNightsFree(LocalDate checkinDate, LocalDate checkoutDate, @Nullable BookableNights bookable) {
+
+        if (bookable == null) {
+            return checkinDate.datesUntil(checkoutDate).anyMatch(nightReservations::isClaimed) ? "nights_claimed" : null;
+        }
+
+        if (checkinDate.datesUntil(checkoutDate).anyMatch(d -> !bookable.isFree(d) && !bookable.isBooked(d))) {
+            return "nights_claimed";
+        }
+
+        if (checkinDate.datesUntil(checkoutDate).anyMatch(bookable::isBooked)) {
+            return "nights_booked";
+        }
+
+        return null;
+    }
+
+    /**
+     * Hold the nights of a stay for a while, so it can be confirmed as a booking without anyone else taking them.
+     * Held nights cannot be booked or held by others, and are shown as unavailable. Holds are kept in memory only, so
+     * only guard against bookings made through this instance, and are only shown as unavailable by it.
+     * @param bookingDTO the booking details, confirmed as they are
+     * @return the hold, and when it lapses unless confirmed
+     * @throws IllegalArgumentException if date validations fail, or more than three nights requested
+     * @throws DatesUnavailableException if date(s) are unavailable, with the nearest stays of the same length which are not
+     */
+    public HoldDTO holdBooking(BookingDTO bookingDTO) {
+        return metrics.time("holdBooking", () -> {
+
+            var checkinDate = bookingDTO.getCheckinDate();
+            var checkoutDate = bookingDTO.getCheckoutDate();
+            validateDates(checkinDate, checkoutDate);
+            try {
+                claimDates(checkinDate, checkoutDate, null);
+            } catch (DatesUnavailableException e) {
+                throw withAlternatives(bookingDTO, e);
+            }
+
+            return startHold(bookingDTO, null);
+        });
+    }
+
+    /**
+     * Hold nights already claimed, until the hold lapses.
+     * @param waitlistId the waitlist entry promoted to the hold, if any
+     */
+    private HoldDTO startHold(BookingDTO bookingDTO, @Nullable UUID waitlistId) {
+
+        var holdId = UUID.randomUUID();
+        var ttl = Duration.ofSeconds(holdTtlSeconds);
+        var hold = new Hold(bookingDTO, waitlistId);
+        var checkinDate = bookingDTO.getCheckinDate();
+        var checkoutDate = bookingDTO.getCheckoutDate();
+        occupancyChanged(() -> heldNights.occupy(checkinDate, checkoutDate),
+                checkinDate, checkinDate, checkinDate, checkoutDate);
+
+        holds.put(holdId, hold);
+        hold.expiry = expiryWheel.schedule(() -> {
+            // unless confirmed or released first, even before this was scheduled
+            if (holds.remove(holdId, hold)) {
+                endHold(hold, true);
+            }
+        }, ttl);
+
+        return new HoldDTO(holdId, Instant.now(clock).plus(ttl));
+    }
+
+    /**
+     * Follow a hold being taken out of {@link #holds}.
+     * @param free whether to free its nights, rather than leave them to the booking confirming it
+     */
+    private void endHold(Hold hold, boolean free) {
+
+        hold.cancelExpiry();
+        if (hold.waitlistId != null) {
+            waitlist.remove(hold.waitlistId);
+        }
+
+        if (free) {
+            freeHeldNights(hold.bookingDTO.getCheckinDate(), hold.bookingDTO.getCheckoutDate());
+        }
+    }
+
+    /**
+     * Free the nights of a hold, offering them to the stays waiting for them.
+     */
+    private void freeHeldNights(LocalDate checkinDate, LocalDate checkoutDate) {
+
+        // released with the change, so anyone claiming them next changes them after
+        occupancyChanged(() -> {
+            heldNights.release(checkinDate, checkoutDate);
+            nightReservations.release(checkinDate, checkoutDate);
+        }, checkinDate, checkoutDate, checkinDate, checkinDate);
+    }
+
+    /**
+     * Confirm a hold as a booking.
+     * @param holdId the hold ID
+     * @return the ID of the booking
+     * @throws NoSuchElementException if the hold does not exist, or has lapsed
+     */
+    public UUID confirmHold(UUID holdId) {
+        return metrics.time("confirmHold", () -> {
+
+            if (writePipeline != null) {
+                return await(writePipeline.submit(null, () -> stageConfirm(holdId), Booking::getId));
+            }
+
+            return writeAdmitted(() -> stageConfirm(holdId)).getId();
+        });
+    }
+
+    private StagedWrite stageConfirm(UUID holdId) {
+
+        // once taken, the hold can no longer lapse - its nights are released when written, or if writing fails
+        var hold = holds.remove(holdId);
+        if (hold == null) {
+            throw new NoSuchElementException(ERROR_HOLD_NOT_FOUND);
+        }
+        endHold(hold, false);
+
+        var bookingDTO = hold.bookingDTO;
+        var checkinDate = bookingDTO.getCheckinDate();
+        var checkoutDate = bookingDTO.getCheckoutDate();
+        var stagedWrite = stageClaimed(new Booking(null,
+                checkinDate,
+                checkoutDate,
+                bookingDTO.getEmail(),
+                bookingDTO.getFullName()), null);
+
+        // the nights are shown as held until booked, or freed if the write fails
+        return new StagedWrite() {
+
+            private boolean committed;
+
+            @Override
+            public Booking persist() {
+                return stagedWrite.persist();
+            }
+
+            @Override
+            public void commit(Booking persisted) {
+                stagedWrite.commit(persisted);
+                committed = true;
+            }
+
+            @Override
+            public void release() {
+
+                // booked now, or freed as the write failed - the hold's claim goes with the write's
+                if (committed) {
+                    heldNights.release(checkinDate, checkoutDate);
+                    stagedWrite.release();
+                } else {
+                    occupancyChanged(() -> {
+                        heldNights.release(checkinDate, checkoutDate);
+                        stagedWrite.release();
+                    }, checkinDate, checkoutDate, checkinDate, checkinDate);
+                }
+            }
+        };
+    }
+
+    /**
+     * Release a hold, freeing its nights.
+     * @param holdId the hold ID
+     * @throws NoSuchElementException if the hold does not exist, or has lapsed
+     */
+    public void releaseHold(UUID holdId) {
+        metrics.time("releaseHold", () -> {
+
+            var hold = holds.remove(holdId);
+            if (hold == null) {
+                throw new NoSuchElementException(ERROR_HOLD_NOT_FOUND);
+            }
+            endHold(hold, true);
+        });
+    }
+
+    /**
+     * Wait for the nights of a stay to be freed, by a booking being cancelled or moved or a hold ending. Once they
+     * are, the earliest stay waiting for them is promoted to a hold, to be confirmed as any other. A stay whose nights
+     * are free already is promoted straight away.
+     * @param bookingDTO the booking details
+     * @return the waitlist entry, not yet promoted
+     * @throws IllegalArgumentException if date validations fail, or more than three nights requested
+     * @throws RejectedExecutionException if the waitlist is full
+     */
+    public WaitlistDTO joinWaitlist(BookingDTO bookingDTO) {
+        return metrics.time("joinWaitlist", () -> {
+
+            validateDates(bookingDTO.getCheckinDate(), bookingDTO.getCheckoutDate());
+            // not turning anyone away for stays which can no longer be booked
+            expireWaitlisted();
+            if (waitlist.size() >= WAITLIST_MAX_ENTRIES) {
+                throw new RejectedExecutionException("The waitlist is full.");
+            }
+
+            var entry = waitlist.add(bookingDTO);
+            promoteWaitlisted(bookingDTO.getCheckinDate(), bookingDTO.getCheckoutDate());
+
+            return new WaitlistDTO(entry.getId(), null);
+        });
+    }
+
+    /**
+     * Retrieve a waitlist entry, and the hold it was promoted to if any.
+     * @param waitlistId the waitlist entry ID
+     * @throws NoSuchElementException if the entry does not exist, or its hold has ended
+     */
+    public WaitlistDTO getWaitlisted(UUID waitlistId) {
+        return metrics.time("getWaitlisted", () -> {
+
+            var entry = waitlist.get(waitlistId);
+            if (entry == null) {
+                throw new NoSuchElementException(ERROR_WAITLIST_NOT_FOUND);
+            }
+
+            return new WaitlistDTO(entry.getId(), entry.getHold());
+        });
+    }
+
+    /**
+     * Stop waiting. Once promoted, release the hold instead.
+     * @param waitlistId the waitlist entry ID
+     * @throws NoSuchElementException if the entry does not exist, or its hold has ended
+     */
+    public void leaveWaitlist(UUID waitlistId) {
+        metrics.time("leaveWaitlist", () -> {
+
+            if (!waitlist.removeWaiting(waitlistId)) {
+                throw new NoSuchElementException(ERROR_WAITLIST_NOT_FOUND);
+            }
+        });
+    }
+
+    /**
+     * Remove the stays still waiting which are now too late to book, so they do not fill the waitlist forever.
      */
-    private static final int BOOKING_MIN_DAYS_FROM_TODAY = 1;
-
-    private static final String ERROR_BOOKING_NOT_FOUND = "Cannot find booking with specified ID.";
+    void expireWaitlisted() {
+        waitlist.removeWaitingBefore(LocalDate.now(clock).plusDays(BOOKING_MIN_DAYS_FROM_TODAY));
+    }
 
-    private final BookingRepository bookingRepository;
-    private final Clock clock;
-    private final ReentrantLock lock = new ReentrantLock(true);
+    /**
+     * Expire waitlisted stays at the start of each day, as that is when stays checking in the next day become too
+     * late to book.
+     */
+    private void scheduleWaitlistExpiry() {
 
-    @Autowired
-    public BookingService(BookingRepository bookingRepository, Clock clock) {
-        this.bookingRepository = bookingRepository;
-        this.clock = clock;
+        var nextDay = LocalDate.now(clock).plusDays(1).atStartOfDay(clock.getZone()).toInstant();
+        expiryWheel.schedule(() -> {
+            expireWaitlisted();
+            scheduleWaitlistExpiry();
+        }, Duration.between(Instant.now(clock), nextDay));
     }
 
     /**
-     * Find the current availability given a range of dates. If {@code to} parameter is not specified, defaults to a month following {@code from}.
-     * @param from the date (inclusive) from which to query
-     * @param to the date (exclusive) to serve as upper bound of query
-     * @return a list of dates available
+     * Offer freed nights to the stays waiting for them, earliest first, off the thread which freed them.
+     * @param from the first night freed (inclusive)
+     * @param to the last night freed (exclusive)
+     * @return a future completed once offered
      */
-    public List<LocalDate> findAvailability(LocalDate from, @Nullable LocalDate to) {
+    CompletableFuture<Void> promoteWaitlisted(LocalDate from, LocalDate to) {
+        try {
+            return CompletableFuture.runAsync(() -> {
+                for (Waitlist.Entry entry : waitlist.waitingFor(from, to)) {
+                    promote(entry);
+                }
+            }, waitlistPromoter);
+        } catch (RejectedExecutionException e) {
+            // stopping
+            return CompletableFuture.completedFuture(null);
+        }
+    }
 
-        var toDate = to == null ?
-                from.plusMonths(1) :
-                to;
+    private void promote(Waitlist.Entry entry) {
 
-        if (from.isAfter(toDate)) {
-            throw new IllegalArgumentException("The `from` date must be before the `to` date.");
-        }
+        var bookingDTO = entry.getBookingDTO();
+        var checkinDate = bookingDTO.getCheckinDate();
+        var checkoutDate = bookingDTO.getCheckoutDate();
 
-        // ensure we're not exposing past bookings to competitors
-        if (from.isBefore(LocalDate.now(clock))) {
-            throw new IllegalArgumentException("The `from` date must not be in the past.");
+        if (checkinDate.isBefore(LocalDate.now(clock).plusDays(BOOKING_MIN_DAYS_FROM_TODAY))) {
+            // too late to book now
+            waitlist.remove(entry.getId());
+            return;
         }
 
-        var bookingsDuringPeriod = bookingRepository.findBookingsByCheckinDateBetween(from, toDate);
-        var daysOccupied = bookingsDuringPeriod.stream()
-                .flatMap(b -> b.getCheckinDate().datesUntil(b.getCheckoutDate()))
-                .collect(Collectors.toSet());
+        if (tryClaimDates(checkinDate, checkoutDate, null) != null) {
+            // still taken, or only some of the nights were freed
+            return;
+        }
 
-        return from.datesUntil(toDate)
-                .filter(d -> !daysOccupied.contains(d))
-                .collect(Collectors.toList());
+        var hold = startHold(bookingDTO, entry.getId());
+        if (!waitlist.promote(entry, hold)) {
+            // left the waitlist meanwhile
+            var removed = holds.remove(hold.getHoldId());
+            if (removed != null) {
+                endHold(removed, true);
+            }
+        }
     }
 
     /**
-     * Create a new booking, assuming latest availabilty agrees.
-     * @param bookingDTO the booking details
-     * @return the ID of the booking
-     * @throws IllegalArgumentException if date validations fail, more than three nights requested, or date(s) are unavailable
+     * @param validate whether to validate the dates, unless the caller already has
      */
-    public UUID createBooking(BookingDTO bookingDTO) {
+    private StagedWrite stageCreate(BookingDTO bookingDTO, boolean validate) {
 
-        validateDates(bookingDTO.getCheckinDate(), bookingDTO.getCheckoutDate());
+        if (validate) {
+            validateDates(bookingDTO.getCheckinDate(), bookingDTO.getCheckoutDate());
+        }
 
         var newBooking = new Booking(null,
                 bookingDTO.getCheckinDate(),
@@ -90,59 +958,275 @@ public class BookingService {
                 bookingDTO.getEmail(),
                 bookingDTO.getFullName());
 
-        return lockAndSaveOrUpdate(newBooking, null).getId();
+        try {
+            return stageDates(newBooking, null);
+        } catch (DatesUnavailableException e) {
+            throw withAlternatives(bookingDTO, e);
+        }
     }
 
     private void validateDates(LocalDate checkinDate, LocalDate checkoutDate) {
 
+        var rejection = checkDates(checkinDate, checkoutDate);
+        if (rejection != null) {
+            throw new IllegalArgumentException(rejection.getMessage());
+        }
+    }
+
+    /**
+     * @return null if the dates are valid, otherwise why not, counted as a rejection
+     */
+    @Nullable
+    private Rejection checkDates(LocalDate checkinDate, LocalDate checkoutDate) {
+
         if (checkinDate.isAfter(checkoutDate)) {
-            throw new IllegalArgumentException("Check-in and check-out date combination is invalid.");
+            return rejected("checkout_before_checkin", "Check-in and check-out date combination is invalid.");
         }
 
         if (checkinDate.until(checkoutDate).getDays() < 1) {
-            throw new IllegalArgumentException("Cannot check-in and check-out on same day.");
+            return rejected("same_day", "Cannot check-in and check-out on same day.");
         }
 
         if (checkinDate.isBefore(LocalDate.now(clock).plusDays(BOOKING_MIN_DAYS_FROM_TODAY))) {
-            throw new IllegalArgumentException("Bookings must be made at least one day in advance.");
+            return rejected("too_soon", "Bookings must be made at least one day in advance.");
         }
 
         if (checkinDate.until(checkoutDate).getDays() > BOOKING_MAX_NIGHTS) {
-            throw new IllegalArgumentException("Booking cannot exceed maximum number of nights allowed.");
+            return rejected("too_many_nights", "Booking cannot exceed maximum number of nights allowed.");
         }
 
         if (checkinDate.isAfter(LocalDate.now(clock).plusMonths(1))) {
-            throw new IllegalArgumentException("Bookings cannot be made more than a month in advance.");
+            return rejected("too_far_ahead", "Bookings cannot be made more than a month in advance.");
         }
+
+        return null;
+    }
+
+    private Rejection rejected(String reason, String message) {
+        metrics.rejected(reason);
+        return Rejection.invalid(message);
     }
 
-    private Booking lockAndSaveOrUpdate(Booking bookingToSaveOrUpdate, @Nullable Collection<LocalDate> originalDates) {
+    private StagedWrite stageDates(Booking booking, @Nullable Booking originalBooking) {
+        claimDates(booking.getCheckinDate(), booking.getCheckoutDate(), originalBooking);
+        return stageClaimed(booking, originalBooking);
+    }
 
-        // lock and execute critical section
-        lock.lock();
-        try {
+    /**
+     * Claim the nights of a stay not already ours, checking none are booked.
+     * @throws DatesUnavailableException if another writer or hold has any of them, or any are booked
+     */
+    private void claimDates(LocalDate checkinDate, LocalDate checkoutDate, @Nullable Booking originalBooking) {
+
+        var reason = tryClaimDates(checkinDate, checkoutDate, originalBooking);
+        if (reason != null) {
+            throw metrics.rejected(reason, new DatesUnavailableException(ERROR_DATES_UNAVAILABLE));
+        }
+    }
+
+    /**
+     * @return null once claimed, otherwise the reason the nights could not be
+     */
+    @Nullable
+    private String tryClaimDates(LocalDate checkinDate, LocalDate checkoutDate, @Nullable Booking originalBooking) {
+
+        // claim the nights not already ours, failing fast if another writer holds any of them
+        // nights of the original stay are ours, so are skipped throughout
+        var skipFrom = originalBooking == null ? checkinDate : originalBooking.getCheckinDate();
+        var skipTo = originalBooking == null ? checkinDate : originalBooking.getCheckoutDate();
+        if (!nightReservations.claim(checkinDate, checkoutDate, skipFrom, skipTo)) {
+            return "nights_claimed";
+        }
+
+        // no-one else here can write the claimed nights, the index holds their latest availability
+        // when shared, leave it to the database to reject nights booked elsewhere
+        if (!sharedOccupancy && !checkinDate.datesUntil(checkoutDate)
+                .allMatch(d -> isOwnNight(originalBooking, d) || !occupancyIndex.isOccupied(d))) {
+            nightReservations.release(checkinDate, checkoutDate, skipFrom, skipTo);
+            return "nights_booked";
+        }
+
+        return null;
+    }
+
+    /**
+     * Stage a write of a booking whose nights are claimed, releasing the claim once written or failed.
+     */
+    private StagedWrite stageClaimed(Booking booking, @Nullable Booking originalBooking) {
 
-            // no-one else writing at this instant, get latest availability
-            var availableDates = findAvailability(bookingToSaveOrUpdate.getCheckinDate(), bookingToSaveOrUpdate.getCheckoutDate());
+        var checkinDate = booking.getCheckinDate();
+        var checkoutDate = booking.getCheckoutDate();
+        var skipFrom = originalBooking == null ? checkinDate : originalBooking.getCheckinDate();
+        var skipTo = originalBooking == null ? checkinDate : originalBooking.getCheckoutDate();
+        long claimedAt = System.nanoTime();
 
-            // add back original dates to pass validation below
-            if (originalDates != null) {
-                availableDates.addAll(originalDates);
+        return new StagedWrite() {
+
+            @Override
+            public Booking persist() {
+
+                // save a copy, so a rolled back attempt leaves nothing behind for the next
+                var savedBooking = bookingRepository.save(new Booking(booking));
+
+                // keep the nights the stay still covers, add the rest
+                if (originalBooking != null) {
+                    bookingNightRepository.deleteNightsOutside(savedBooking.getId(), checkinDate, checkoutDate);
+                }
+                bookingNightRepository.saveAll(checkinDate.datesUntil(checkoutDate)
+                        .filter(d -> !isOwnNight(originalBooking, d))
+                        .map(d -> new BookingNight(savedBooking, d))
+                        .collect(Collectors.toList()));
+
+                return savedBooking;
+            }
+
+            @Override
+            public void commit(Booking persisted) {
+                if (originalBooking == null) {
+                    occupancyChanged(() -> occupancyIndex.occupy(checkinDate, checkoutDate),
+                            checkinDate, checkinDate, checkinDate, checkoutDate);
+                } else {
+                    occupancyChanged(() -> occupancyIndex.move(originalBooking.getCheckinDate(),
+                                    originalBooking.getCheckoutDate(), checkinDate, checkoutDate),
+                            originalBooking.getCheckinDate(), originalBooking.getCheckoutDate(),
+                            checkinDate, checkoutDate);
+                }
             }
 
-            // ensure all dates for stay are available
-            if (!bookingToSaveOrUpdate.getCheckinDate().datesUntil(bookingToSaveOrUpdate.getCheckoutDate())
-                    .allMatch(availableDates::contains)) {
-                throw new IllegalArgumentException("The date(s) requested are no longer available.");
+            @Override
+            public void release() {
+                // the index now guards the nights, or the write failed
+                nightReservations.release(checkinDate, checkoutDate, skipFrom, skipTo);
+                metrics.recordClaim(System.nanoTime() - claimedAt);
             }
+        };
+    }
+
+    /**
+     * Stage, persist and commit a write once admitted, so no nights are claimed while waiting.
+     * @throws WritesOverloadedException if too many writes are in progress to wait for
+     */
+    private Booking writeAdmitted(Supplier<StagedWrite> stage) {
+
+        var admission = writeAdmission;
+        if (admission == null) {
+            return write(stage.get());
+        }
+
+        return admission.admit(() -> write(stage.get()));
+    }
 
-            return bookingRepository.save(bookingToSaveOrUpdate);
+    /**
+     * Persist, then commit, a staged write in a transaction of its own.
+     */
+    private Booking write(StagedWrite stagedWrite) {
 
+        try {
+            var persisted = persistAll(List.of(stagedWrite)).get(0);
+            stagedWrite.commit(persisted);
+            return persisted;
         } finally {
-            lock.unlock();
+            stagedWrite.release();
+        }
+    }
+
+    /**
+     * Persist staged writes in one transaction. A batch failing is retried by the write pipeline a write at a time, so
+     * only the outcome of a single write is final, and counted if rejected.
+     */
+    private List<Booking> persistAll(List<StagedWrite> stagedWrites) {
+
+        try {
+            return metrics.timePersist(stagedWrites.size(), () -> transactionTemplate.execute(status -> {
+                var persisted = new ArrayList<Booking>(stagedWrites.size());
+                for (StagedWrite stagedWrite : stagedWrites) {
+                    persisted.add(stagedWrite.persist());
+                }
+                return persisted;
+            }));
+        } catch (DataIntegrityViolationException e) {
+            // a night is already booked, possibly by another instance
+            var exception = new DatesUnavailableException(ERROR_DATES_UNAVAILABLE, e);
+            throw stagedWrites.size() == 1 ? metrics.rejected("nights_booked_elsewhere", exception) : exception;
+        }
+    }
+
+    /**
+     * Change the occupancy of nights, then follow the change once it is visible to readers. The change and its version
+     * are taken together, so a night's latest change always has its latest version, and changes are published in
+     * version order.
+     * @param change changes the occupancy index, or the held nights - and releases any claims freed by it
+     * @param releaseFrom the first night released (inclusive)
+     * @param releaseTo the last night released (exclusive)
+     * @param occupyFrom the first night occupied (inclusive), which may overlap those released
+     * @param occupyTo the last night occupied (exclusive)
+     */
+    private void occupancyChanged(Runnable change,
+                                  LocalDate releaseFrom,
+                                  LocalDate releaseTo,
+                                  LocalDate occupyFrom,
+                                  LocalDate occupyTo) {
+
+        synchronized (occupancyLock) {
+
+            change.run();
+            availabilityCache.invalidate(releaseFrom, releaseTo);
+            availabilityCache.invalidate(occupyFrom, occupyTo);
+            long version = occupancyVersion.incrementAndGet();
+
+            if (!occupancyListeners.isEmpty()) {
+                var changes = new ArrayList<AvailabilityChangeDTO>();
+                releaseFrom.datesUntil(releaseTo)
+                        .filter(d -> d.isBefore(occupyFrom) || !d.isBefore(occupyTo))
+                        .forEach(d -> changes.add(new AvailabilityChangeDTO(d, false, version)));
+                occupyFrom.datesUntil(occupyTo)
+                        .filter(d -> d.isBefore(releaseFrom) || !d.isBefore(releaseTo))
+                        .forEach(d -> changes.add(new AvailabilityChangeDTO(d, true, version)));
+
+                if (!changes.isEmpty()) {
+                    unpublishedChanges.add(Collections.unmodifiableList(changes));
+                }
+            }
+        }
+
+        publishChanges();
+
+        if (releaseFrom.isBefore(releaseTo) && waitlist.size() > 0) {
+            promoteWaitlisted(releaseFrom, releaseTo);
+        }
+    }
+
+    /**
+     * Publish the changes queued so far, unless another thread already is - it publishes those queued meanwhile, so
+     * only one thread at a time calls listeners, and in version order.
+     */
+    private void publishChanges() {
+
+        while (!unpublishedChanges.isEmpty() && publishing.compareAndSet(false, true)) {
+            try {
+                List<AvailabilityChangeDTO> changes;
+                while ((changes = unpublishedChanges.poll()) != null) {
+                    for (Consumer<List<AvailabilityChangeDTO>> listener : occupancyListeners) {
+                        try {
+                            listener.accept(changes);
+                        } catch (RuntimeException e) {
+                            // the change is already committed, a failing listener must not fail the write
+                            LOGGER.warn("Occupancy listener failed.", e);
+                        }
+                    }
+                }
+            } finally {
+                publishing.set(false);
+            }
         }
     }
 
+    private static boolean isOwnNight(@Nullable Booking booking, LocalDate night) {
+        return booking != null
+                && !night.isBefore(booking.getCheckinDate())
+                && night.isBefore(booking.getCheckoutDate());
+    }
+
     /**
      * Retrieve an existing booking.
      * @param bookingId the {@link UUID} of the booking
@@ -150,23 +1234,115 @@ public class BookingService {
      * @throws java.util.NoSuchElementException if entity does not exist
      */
     public BookingDTO getBooking(UUID bookingId) {
-        return bookingRepository.findById(bookingId)
-                .map(BookingDTO::new)
-                .orElseThrow(() -> new NoSuchElementException(ERROR_BOOKING_NOT_FOUND));
+        return getVersionedBooking(bookingId).getValue();
+    }
+
+    /**
+     * Retrieve an existing booking along with its current version.
+     * @param bookingId the {@link UUID} of the booking
+     * @return the booking details and version
+     * @throws java.util.NoSuchElementException if entity does not exist
+     */
+    public Versioned<BookingDTO> getVersionedBooking(UUID bookingId) {
+        return metrics.time("getVersionedBooking", () -> bookingRepository.findById(bookingId)
+                .map(BookingService::toVersionedDTO)
+                .orElseThrow(() -> new NoSuchElementException(ERROR_BOOKING_NOT_FOUND)));
+    }
+
+    /**
+     * Retrieve an existing booking along with its current version, without throwing if it does not exist.
+     * @param bookingId the {@link UUID} of the booking
+     * @return the booking details and version, or why not if it does not exist
+     */
+    public Validation<Versioned<BookingDTO>> findVersionedBooking(UUID bookingId) {
+        return metrics.time("findVersionedBooking", () -> bookingRepository.findById(bookingId)
+                .map(b -> Validation.valid(toVersionedDTO(b)))
+                .orElseGet(() -> Validation.rejected(Rejection.notFound(ERROR_BOOKING_NOT_FOUND))));
     }
 
     /**
-     * Cancel an existing booking.
+     * Cancel an existing booking. Only the booking as read is cancelled, so its nights are released as they were - the
+     * cancel is retried on the latest booking when a concurrent update gets there first.
      * @param bookingId the booking ID
      * @throws NoSuchElementException if booking does not exist
+     * @throws OptimisticLockingFailureException if concurrent updates prevented this one on every attempt
      */
     public void cancelBooking(UUID bookingId) {
+        metrics.time("cancelBooking", () -> {
 
-        try {
-            bookingRepository.deleteById(bookingId);
-        } catch (EmptyResultDataAccessException e) {
-            throw new NoSuchElementException(ERROR_BOOKING_NOT_FOUND);
-        }
+            if (writePipeline != null) {
+                await(cancelBookingAsync(bookingId));
+                return;
+            }
+
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    writeAdmitted(() -> stageCancel(bookingId));
+                    return;
+                } catch (OptimisticLockingFailureException e) {
+
+                    if (attempt >= UPDATE_MAX_ATTEMPTS) {
+                        throw e;
+                    }
+
+                    backOff(attempt, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancel an existing booking, through the write pipeline when enabled.
+     * @param bookingId the booking ID
+     * @return a future completed once cancelled, failing as {@link #cancelBooking(UUID)} would throw
+     */
+    public CompletableFuture<Void> cancelBookingAsync(UUID bookingId) {
+        return metrics.timeAsync("cancelBookingAsync", () -> {
+
+            if (writePipeline == null) {
+                return completed(() -> {
+                    cancelBooking(bookingId);
+                    return null;
+                });
+            }
+
+            return writePipeline.submit(bookingId, () -> stageCancel(bookingId), b -> null);
+        });
+    }
+
+    private StagedWrite stageCancel(UUID bookingId) {
+
+        var existingBooking = bookingRepository.findById(bookingId)
+                .orElseThrow(() -> new NoSuchElementException(ERROR_BOOKING_NOT_FOUND));
+
+        return new StagedWrite() {
+
+            @Override
+            public Booking persist() {
+
+                bookingNightRepository.deleteNights(bookingId);
+
+                // gone or moved since read - the nights to release are no longer these, so read it again
+                if (bookingRepository.deleteByIdAndVersion(bookingId, existingBooking.getVersion()) == 0) {
+                    throw new ObjectOptimisticLockingFailureException(Booking.class, bookingId);
+                }
+
+                return existingBooking;
+            }
+
+            @Override
+            public void commit(Booking persisted) {
+                var checkinDate = existingBooking.getCheckinDate();
+                var checkoutDate = existingBooking.getCheckoutDate();
+                occupancyChanged(() -> occupancyIndex.release(checkinDate, checkoutDate),
+                        checkinDate, checkoutDate, checkinDate, checkinDate);
+            }
+
+            @Override
+            public void release() {
+                // nothing claimed
+            }
+        };
     }
 
     /**
@@ -176,12 +1352,102 @@ public class BookingService {
      * @return the updated booking
      * @throws IllegalArgumentException if any validations fail
      * @throws java.util.NoSuchElementException if booking does not exist
+     * @throws OptimisticLockingFailureException if concurrent updates prevented this one on every attempt
      */
     public BookingDTO updateBooking(UUID bookingId, BookingDTO bookingDTO) {
+        return updateBooking(bookingId, bookingDTO, null).getValue();
+    }
+
+    /**
+     * Update an existing booking - non-null fields will replace existing values. Without an expected version, the
+     * update is retried on the latest booking when a concurrent update gets there first.
+     * @param bookingId the booking ID
+     * @param bookingDTO the booking details to replace existing with
+     * @param expectedVersion the version the update is conditional on, if any
+     * @return the updated booking and its new version
+     * @throws IllegalArgumentException if any validations fail
+     * @throws java.util.NoSuchElementException if booking does not exist
+     * @throws VersionMismatchException if the booking is not, or is no longer, at the expected version
+     * @throws OptimisticLockingFailureException if concurrent updates prevented this one on every attempt
+     */
+    public Versioned<BookingDTO> updateBooking(UUID bookingId, BookingDTO bookingDTO, @Nullable Long expectedVersion) {
+        return metrics.time("updateBooking", () -> updateWithRetries(bookingId, bookingDTO, expectedVersion));
+    }
+
+    private Versioned<BookingDTO> updateWithRetries(UUID bookingId, BookingDTO bookingDTO, @Nullable Long expectedVersion) {
+
+        if (writePipeline != null) {
+            return await(updateBookingAsync(bookingId, bookingDTO, expectedVersion));
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return toVersionedDTO(writeAdmitted(() -> stageUpdate(bookingId, bookingDTO, expectedVersion)));
+            } catch (OptimisticLockingFailureException e) {
+
+                // a conditional update must not be reapplied on top of someone else's
+                if (expectedVersion != null) {
+                    throw new VersionMismatchException(ERROR_VERSION_MISMATCH);
+                }
+
+                if (attempt >= UPDATE_MAX_ATTEMPTS) {
+                    throw e;
+                }
+
+                backOff(attempt, e);
+            }
+        }
+    }
+
+    /**
+     * Update an existing booking, through the write pipeline when enabled. The pipeline applies updates to a booking
+     * one at a time, so they are not retried.
+     * @param bookingId the booking ID
+     * @param bookingDTO the booking details to replace existing with
+     * @param expectedVersion the version the update is conditional on, if any
+     * @return a future of the updated booking and its new version, failing as
+     * {@link #updateBooking(UUID, BookingDTO, Long)} would throw
+     */
+    public CompletableFuture<Versioned<BookingDTO>> updateBookingAsync(UUID bookingId,
+                                                                       BookingDTO bookingDTO,
+                                                                       @Nullable Long expectedVersion) {
+
+        return metrics.timeAsync("updateBookingAsync", () -> submitUpdate(bookingId, bookingDTO, expectedVersion));
+    }
+
+    private CompletableFuture<Versioned<BookingDTO>> submitUpdate(UUID bookingId,
+                                                                  BookingDTO bookingDTO,
+                                                                  @Nullable Long expectedVersion) {
+
+        if (writePipeline == null) {
+            return completed(() -> updateBooking(bookingId, bookingDTO, expectedVersion));
+        }
+
+        var result = new CompletableFuture<Versioned<BookingDTO>>();
+        writePipeline.submit(bookingId, () -> stageUpdate(bookingId, bookingDTO, expectedVersion),
+                        BookingService::toVersionedDTO)
+                .whenComplete((updated, e) -> {
+                    if (e == null) {
+                        result.complete(updated);
+                    } else if (expectedVersion != null && e instanceof OptimisticLockingFailureException) {
+                        result.completeExceptionally(new VersionMismatchException(ERROR_VERSION_MISMATCH));
+                    } else {
+                        result.completeExceptionally(e);
+                    }
+                });
+
+        return result;
+    }
+
+    private StagedWrite stageUpdate(UUID bookingId, BookingDTO bookingDTO, @Nullable Long expectedVersion) {
 
         var existingBooking = bookingRepository.findById(bookingId)
                 .orElseThrow(() -> new NoSuchElementException(ERROR_BOOKING_NOT_FOUND));
 
+        if (expectedVersion != null && !expectedVersion.equals(existingBooking.getVersion())) {
+            throw new VersionMismatchException(ERROR_VERSION_MISMATCH);
+        }
+
         var updatedBooking = new Booking(existingBooking);
 
         if (bookingDTO.getEmail() != null) {
@@ -195,13 +1461,10 @@ public class BookingService {
         if (bookingDTO.getCheckinDate() != null || bookingDTO.getCheckoutDate() != null) {
 
             // change the dates
-            var originalDates = existingBooking.getCheckinDate()
-                    .datesUntil(existingBooking.getCheckoutDate())
-                    .collect(Collectors.toList());
             if (bookingDTO.getCheckinDate() != null) {
 
                 if (LocalDate.now(clock).compareTo(existingBooking.getCheckinDate()) > -1) {
-                    throw new IllegalArgumentException("Stay is already in progress.");
+                    throw metrics.rejected("stay_in_progress", "Stay is already in progress.");
                 }
 
                 updatedBooking.setCheckinDate(bookingDTO.getCheckinDate());
@@ -212,10 +1475,150 @@ public class BookingService {
 
             validateDates(updatedBooking.getCheckinDate(), updatedBooking.getCheckoutDate());
 
-            return new BookingDTO(lockAndSaveOrUpdate(updatedBooking, originalDates));
+            return stageDates(updatedBooking, existingBooking);
         }
 
         // update details other than dates
-        return new BookingDTO(bookingRepository.save(updatedBooking));
+        return new StagedWrite() {
+
+            @Override
+            public Booking persist() {
+                return bookingRepository.save(new Booking(updatedBooking));
+            }
+
+            @Override
+            public void commit(Booking persisted) {
+                // occupancy unchanged
+            }
+
+            @Override
+            public void release() {
+                // nothing claimed
+            }
+        };
+    }
+
+    private static void backOff(int attempt, OptimisticLockingFailureException cause) {
+
+        long delay = UPDATE_BACKOFF_MILLIS << (attempt - 1);
+        try {
+            // jitter so that the writers which collided don't collide again
+            Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static <T> CompletableFuture<T> completed(Supplier<T> supplier) {
+
+        try {
+            return CompletableFuture.completedFuture(supplier.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static Versioned<BookingDTO> toVersionedDTO(Booking booking) {
+        return new Versioned<>(new BookingDTO(booking),
+                booking.getVersion() == null ? 0 : booking.getVersion());
+    }
+
+    /**
+     * The nights a stay may be booked for as of one read, so a stay found unavailable and the alternatives suggested
+     * to it agree.
+     */
+    private static final class BookableNights {
+
+        private final LocalDate from;
+        private final LocalDate lastStart;
+        /**
+         * Bits as {@link OccupancyIndex#findFreeBits} has them, set for the nights not booked.
+         */
+        private final long[] unbooked;
+        /**
+         * The same, set for the nights neither booked nor claimed.
+         */
+        private final long[] free;
+
+        private BookableNights(LocalDate from, LocalDate lastStart, long[] unbooked, long[] free) {
+            this.from = from;
+            this.lastStart = lastStart;
+            this.unbooked = unbooked;
+            this.free = free;
+        }
+
+        private boolean isFree(LocalDate night) {
+            return isSet(free, night);
+        }
+
+        /**
+         * @return whether the night is booked, or out of reach of any stay
+         */
+        private boolean isBooked(LocalDate night) {
+            return !isSet(unbooked, night);
+        }
+
+        /**
+         * Take the nights of a stay, as they were found taken.
+         */
+        private void take(LocalDate checkinDate, LocalDate checkoutDate) {
+            checkinDate.datesUntil(checkoutDate)
+                    .mapToLong(d -> d.toEpochDay() - from.toEpochDay())
+                    .filter(offset -> offset >= 0 && offset < (long) free.length * Long.SIZE)
+                    .forEach(offset -> free[(int) (offset / Long.SIZE)] &= ~(1L << offset));
+        }
+
+        /**
+         * @return the check-in dates bookable with every night of the stay free, in order
+         */
+        private List<LocalDate> findStayStarts(int nights) {
+            return OccupancyIndex.findStayStarts(free, from, lastStart.plusDays(1), nights);
+        }
+
+        private boolean isSet(long[] bits, LocalDate night) {
+            long offset = night.toEpochDay() - from.toEpochDay();
+            return offset >= 0 && offset < (long) bits.length * Long.SIZE
+                    && (bits[(int) (offset / Long.SIZE)] & (1L << offset)) != 0;
+        }
+    }
+
+    /**
+     * Nights claimed for a booking yet to be confirmed.
+     */
+    private static final class Hold {
+
+        private final BookingDTO bookingDTO;
+        @Nullable
+        private final UUID waitlistId;
+        @Nullable
+        private volatile TimingWheel.Timeout expiry;
+
+        private Hold(BookingDTO bookingDTO, @Nullable UUID waitlistId) {
+            this.bookingDTO = bookingDTO;
+            this.waitlistId = waitlistId;
+        }
+
+        /**
+         * Stop the hold lapsing, once taken. Not needed for correctness, as a lapse only releases holds still held.
+         */
+        private void cancelExpiry() {
+            var timeout = expiry;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
     }
 }
@@ -0,0 +1,215 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
+/**
+ * Single-writer pipeline for booking writes.
+ * <p>
+ * Commands are queued in a bounded ring buffer and applied in order by one writer thread, which stages a batch of
+ * them against the in-memory state and persists the whole batch in one transaction. Should the transaction fail, each
+ * write in the batch is retried in a transaction of its own so that only the offending ones fail.
+ */
+class BookingWritePipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingWritePipeline.class);
+
+    private static final long POLL_MILLIS = 100;
+    private static final long STOP_TIMEOUT_MILLIS = 5_000;
+
+    private final BlockingQueue<Command<?>> commands;
+    private final int maxBatchSize;
+    private final Function<List<StagedWrite>, List<Booking>> persister;
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    /**
+     * A command deferred to the next batch, because the current one already writes its booking.
+     */
+    @Nullable
+    private Command<?> deferred;
+
+    /**
+     * @param capacity the maximum number of commands queued
+     * @param maxBatchSize the maximum number of commands persisted in one transaction
+     * @param persister persists a list of staged writes in one transaction, returning the bookings in the same order
+     */
+    BookingWritePipeline(int capacity, int maxBatchSize, Function<List<StagedWrite>, List<Booking>> persister) {
+        this.commands = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.persister = persister;
+        this.writer = new Thread(this::run, "booking-writer");
+        this.writer.setDaemon(true);
+    }
+
+    void start() {
+        writer.start();
+    }
+
+    /**
+     * Stop accepting commands, waiting for those queued to be written.
+     */
+    void stop() throws InterruptedException {
+
+        running = false;
+        writer.join(STOP_TIMEOUT_MILLIS);
+
+        Command<?> command;
+        while ((command = commands.poll()) != null) {
+            command.future.completeExceptionally(new RejectedExecutionException("Booking writes have stopped."));
+        }
+    }
+
+    /**
+     * @return the number of commands waiting for the writer
+     */
+    int queued() {
+        return commands.size();
+    }
+
+    /**
+     * Queue a write.
+     * @param bookingId the ID of the booking written, if it exists already
+     * @param stage stages the write, called on the writer thread
+     * @param result maps the persisted booking to the result of the command
+     * @return a future completed once the write has been committed or has failed
+     */
+    <T> CompletableFuture<T> submit(@Nullable UUID bookingId, Supplier<StagedWrite> stage, Function<Booking, T> result) {
+
+        var command = new Command<>(bookingId, stage, result);
+        if (!running || !commands.offer(command)) {
+            command.future.completeExceptionally(new RejectedExecutionException("Too many booking writes are queued."));
+        }
+
+        return command.future;
+    }
+
+    private void run() {
+
+        var batch = new ArrayList<Command<?>>(maxBatchSize);
+        while (running || deferred != null || !commands.isEmpty()) {
+            try {
+                fill(batch);
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.error("Booking writer failed to write batch.", e);
+                batch.forEach(c -> c.future.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void fill(List<Command<?>> batch) throws InterruptedException {
+
+        Command<?> command = deferred;
+        deferred = null;
+        if (command == null) {
+            command = commands.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        // one command per booking per batch, so each stages against the booking as committed
+        var bookingIds = new HashSet<UUID>();
+        while (command != null) {
+            if (command.bookingId != null && !bookingIds.add(command.bookingId)) {
+                deferred = command;
+                return;
+            }
+
+            batch.add(command);
+            if (batch.size() == maxBatchSize) {
+                return;
+            }
+
+            command = commands.poll();
+        }
+    }
+
+    private void write(List<Command<?>> batch) {
+
+        var staged = new ArrayList<Command<?>>(batch.size());
+        var writes = new ArrayList<StagedWrite>(batch.size());
+        for (Command<?> command : batch) {
+            try {
+                writes.add(command.stage.get());
+                staged.add(command);
+            } catch (RuntimeException e) {
+                command.future.completeExceptionally(e);
+            }
+        }
+
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        try {
+            // a single write failing would only fail again, so is never retried
+            List<Booking> persisted = null;
+            if (writes.size() > 1) {
+                try {
+                    persisted = persister.apply(writes);
+                } catch (RuntimeException e) {
+                    LOGGER.debug("Batch of {} booking writes failed, writing individually.", writes.size(), e);
+                }
+            }
+
+            for (int i = 0; i < writes.size(); i++) {
+                if (persisted != null) {
+                    staged.get(i).commit(writes.get(i), persisted.get(i));
+                } else {
+                    writeIndividually(staged.get(i), writes.get(i));
+                }
+            }
+        } finally {
+            writes.forEach(StagedWrite::release);
+        }
+    }
+
+    private void writeIndividually(Command<?> command, StagedWrite write) {
+
+        try {
+            command.commit(write, persister.apply(List.of(write)).get(0));
+        } catch (RuntimeException e) {
+            command.future.completeExceptionally(e);
+        }
+    }
+
+    private static final class Command<T> {
+
+        @Nullable
+        private final UUID bookingId;
+        private final Supplier<StagedWrite> stage;
+        private final Function<Booking, T> result;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Command(@Nullable UUID bookingId, Supplier<StagedWrite> stage, Function<Booking, T> result) {
+            this.bookingId = bookingId;
+            this.stage = stage;
+            this.result = result;
+        }
+
+        private void commit(StagedWrite write, Booking persisted) {
+            write.commit(persisted);
+            future.complete(result.apply(persisted));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.util.List;
+import ca.andrewmccallum.novapacificisland.booking.dto.StayDTO;
+
+/**
+ * Thrown when any of the nights of a stay are already booked, or being booked. When creating a booking, suggests the
+ * stays of the same length nearest to it which are still available.
+ */
+public class DatesUnavailableException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<StayDTO> alternatives;
+
+    public DatesUnavailableException(String message) {
+        this(message, null, List.of());
+    }
+
+    public DatesUnavailableException(String message, Throwable cause) {
+        this(message, cause, List.of());
+    }
+
+    public DatesUnavailableException(String message, Throwable cause, List<StayDTO> alternatives) {
+        super(message, cause);
+        this.alternatives = List.copyOf(alternatives);
+    }
+
+    /**
+     * @return the nearest available stays, nearest first
+     */
+    public List<StayDTO> getAlternatives() {
+        return alternatives;
+    }
+}
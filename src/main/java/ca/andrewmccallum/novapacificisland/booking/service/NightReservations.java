@@ -0,0 +1,136 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free claims on nights which are in the process of being booked, over a rolling window of epoch-days.
+ * <p>
+ * Each night maps to a slot which is claimed with compare-and-set, so no two writers can ever hold the same night and
+ * a loser fails immediately rather than waiting. A claim only lives until its booking is persisted and the
+ * {@link OccupancyIndex} updated, or its hold lapses - nights already booked are found in the index, not here.
+ */
+class NightReservations {
+
+    /**
+     * The number of slots. Claims are only made for bookable nights, which span far fewer days than this, so
+     * two nights sharing a slot are never claimed at once.
+     */
+    static final int WINDOW_DAYS = 128;
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private final AtomicLongArray slots = new AtomicLongArray(WINDOW_DAYS);
+
+    NightReservations() {
+        for (int i = 0; i < WINDOW_DAYS; i++) {
+            slots.set(i, FREE);
+        }
+    }
+
+    /**
+     * Claim the nights of a stay, all or nothing.
+     * @param from the check-in date (inclusive)
+     * @param to the check-out date (exclusive)
+     * @return whether every night was claimed - if not, none are held
+     */
+    boolean claim(LocalDate from, LocalDate to) {
+        return claim(from, to, from, from);
+    }
+
+    /**
+     * Claim the nights of a stay, all or nothing, skipping those of another stay already held by the caller - such as
+     * the original dates of a booking being updated.
+     * @return whether every night was claimed - if not, none are held
+     */
+    boolean claim(LocalDate from, LocalDate to, LocalDate skipFrom, LocalDate skipTo) {
+
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+        long skipFromDay = skipFrom.toEpochDay();
+        long skipToDay = skipTo.toEpochDay();
+
+        for (long day = fromDay; day < toDay; day++) {
+            if (day >= skipFromDay && day < skipToDay) {
+                continue;
+            }
+
+            if (!slots.compareAndSet(slot(day), FREE, day)) {
+                // roll back the nights claimed so far
+                release(fromDay, day, skipFromDay, skipToDay);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Release nights claimed by {@link #claim(LocalDate, LocalDate)}.
+     */
+    void release(LocalDate from, LocalDate to) {
+        release(from, to, from, from);
+    }
+
+    /**
+     * Release nights claimed by {@link #claim(LocalDate, LocalDate, LocalDate, LocalDate)}.
+     */
+    void release(LocalDate from, LocalDate to, LocalDate skipFrom, LocalDate skipTo) {
+        release(from.toEpochDay(), to.toEpochDay(), skipFrom.toEpochDay(), skipTo.toEpochDay());
+    }
+
+    private void release(long fromDay, long toDay, long skipFromDay, long skipToDay) {
+
+        for (long day = fromDay; day < toDay; day++) {
+            if (day < skipFromDay || day >= skipToDay) {
+                slots.compareAndSet(slot(day), day, FREE);
+            }
+        }
+    }
+
+    /**
+     * @return whether the night is currently claimed, which may be out of date as soon as it is returned
+     */
+    boolean isClaimed(LocalDate night) {
+        long day = night.toEpochDay();
+        return slots.get(slot(day)) == day;
+    }
+
+    /**
+     * Clear the claimed nights out of a set of free nights, which may be out of date as soon as it returns.
+     * @param free words of bits where bit {@code n} of word {@code i} is the night {@code 64 * i + n} days after
+     * {@code from}
+     * @param from the night of the first bit
+     */
+    void clearClaimed(long[] free, LocalDate from) {
+
+        long fromDay = from.toEpochDay();
+        long span = (long) free.length * Long.SIZE;
+        for (int i = 0; i < WINDOW_DAYS; i++) {
+            long day = slots.get(i);
+            if (day != FREE && day >= fromDay && day - fromDay < span) {
+                long offset = day - fromDay;
+                free[(int) (offset / Long.SIZE)] &= ~(1L << offset);
+            }
+        }
+    }
+
+    /**
+     * @return the number of nights currently claimed, which may be out of date as soon as it is returned
+     */
+    int claimed() {
+
+        int claimed = 0;
+        for (int i = 0; i < WINDOW_DAYS; i++) {
+            if (slots.get(i) != FREE) {
+                claimed++;
+            }
+        }
+
+        return claimed;
+    }
+
+    private static int slot(long day) {
+        return (int) Math.floorMod(day, (long) WINDOW_DAYS);
+    }
+}
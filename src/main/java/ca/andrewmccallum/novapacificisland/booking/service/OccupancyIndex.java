@@ -0,0 +1,410 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityWindowDTO;
+import org.springframework.lang.Nullable;
+
+/**
+ * In-memory index of occupied nights - one bit per night, keyed by epoch-day.
+ * <p>
+ * Reads are optimistic and do not block writers. Checking a stay is free and then occupying it is not atomic here -
+ * callers must serialize that themselves.
+ */
+class OccupancyIndex {
+
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+    private static final int BITS_PER_WORD = 1 << ADDRESS_BITS_PER_WORD;
+
+    private final StampedLock stampedLock = new StampedLock();
+
+    /**
+     * The epoch-day of the first bit of {@code words[0]}, always a multiple of {@link #BITS_PER_WORD}.
+     */
+    private long baseDay;
+    private long[] words = new long[0];
+
+    /**
+     * Mark the nights of a stay as occupied.
+     * @param from the check-in date (inclusive)
+     * @param to the check-out date (exclusive)
+     */
+    void occupy(LocalDate from, LocalDate to) {
+
+        long stamp = stampedLock.writeLock();
+        try {
+            setRange(from.toEpochDay(), to.toEpochDay(), true);
+        } finally {
+            stampedLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Mark the nights of a stay as free.
+     * @param from the check-in date (inclusive)
+     * @param to the check-out date (exclusive)
+     */
+    void release(LocalDate from, LocalDate to) {
+
+        long stamp = stampedLock.writeLock();
+        try {
+            setRange(from.toEpochDay(), to.toEpochDay(), false);
+        } finally {
+            stampedLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Atomically move a stay from one set of nights to another, so readers never observe a partial change.
+     */
+    void move(LocalDate releaseFrom, LocalDate releaseTo, LocalDate occupyFrom, LocalDate occupyTo) {
+
+        long stamp = stampedLock.writeLock();
+        try {
+            setRange(releaseFrom.toEpochDay(), releaseTo.toEpochDay(), false);
+            setRange(occupyFrom.toEpochDay(), occupyTo.toEpochDay(), true);
+        } finally {
+            stampedLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove all occupied nights.
+     */
+    void clear() {
+
+        long stamp = stampedLock.writeLock();
+        try {
+            baseDay = 0;
+            words = new long[0];
+        } finally {
+            stampedLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param night the night to check
+     * @return whether the night is occupied
+     */
+    boolean isOccupied(LocalDate night) {
+
+        long day = night.toEpochDay();
+
+        long stamp = stampedLock.tryOptimisticRead();
+        boolean occupied = isSet(words, baseDay, day);
+        if (!stampedLock.validate(stamp)) {
+            stamp = stampedLock.readLock();
+            try {
+                occupied = isSet(words, baseDay, day);
+            } finally {
+                stampedLock.unlockRead(stamp);
+            }
+        }
+
+        return occupied;
+    }
+
+    /**
+     * Find the free nights in the provided window.
+     * @param from the first night (inclusive)
+     * @param to the last night (exclusive)
+     * @return a list of the free nights, in order
+     */
+    List<LocalDate> findFree(LocalDate from, LocalDate to) {
+
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+
+        long stamp = stampedLock.tryOptimisticRead();
+        List<LocalDate> free = collectFree(words, baseDay, fromDay, toDay);
+        if (!stampedLock.validate(stamp)) {
+            stamp = stampedLock.readLock();
+            try {
+                free = collectFree(words, baseDay, fromDay, toDay);
+            } finally {
+                stampedLock.unlockRead(stamp);
+            }
+        }
+
+        return free;
+    }
+
+    /**
+     * Find the free nights in the provided window as bits, rather than night by night.
+     * @param from the first night (inclusive)
+     * @param to the last night (exclusive)
+     * @return words of bits where bit {@code n} of word {@code i} is set when the night {@code 64 * i + n} days after
+     * {@code from} is free, with none set past the end of the window
+     */
+    long[] findFreeBits(LocalDate from, LocalDate to) {
+
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+        if (toDay <= fromDay) {
+            return new long[0];
+        }
+
+        int length = (int) ((toDay - fromDay + BITS_PER_WORD - 1) >>> ADDRESS_BITS_PER_WORD);
+
+        long stamp = stampedLock.tryOptimisticRead();
+        long[] free = copyFree(words, baseDay, fromDay, length);
+        if (!stampedLock.validate(stamp)) {
+            stamp = stampedLock.readLock();
+            try {
+                free = copyFree(words, baseDay, fromDay, length);
+            } finally {
+                stampedLock.unlockRead(stamp);
+            }
+        }
+
+        int tail = (int) ((toDay - fromDay) & (BITS_PER_WORD - 1));
+        if (tail != 0) {
+            free[length - 1] &= (1L << tail) - 1;
+        }
+
+        return free;
+    }
+
+    /**
+     * Find the free nights in each of the provided windows, all as of the same moment.
+     * @param windows the windows, each with a {@code toDate}
+     * @return a list of the free nights of each window, in order
+     */
+    List<List<LocalDate>> findFree(List<AvailabilityWindowDTO> windows) {
+
+        long stamp = stampedLock.tryOptimisticRead();
+        List<List<LocalDate>> free = collectFree(words, baseDay, windows);
+        if (!stampedLock.validate(stamp)) {
+            stamp = stampedLock.readLock();
+            try {
+                free = collectFree(words, baseDay, windows);
+            } finally {
+                stampedLock.unlockRead(stamp);
+            }
+        }
+
+        return free;
+    }
+
+    /**
+     * Find the nights in the provided window on which a stay can start with every one of its nights free. The nights
+     * of the stay may run past the end of the window.
+     * @param from the first night (inclusive)
+     * @param to the last night (exclusive)
+     * @param nights the length of the stay
+     * @return a list of the nights a stay can start on, in order
+     */
+    List<LocalDate> findStayStarts(LocalDate from, LocalDate to, int nights) {
+        return findStayStarts(from, to, nights, null);
+    }
+
+    /**
+     * Find the nights a stay can start on as {@link #findStayStarts(LocalDate, LocalDate, int)} does, also treating
+     * the nights claimed by other writers - such as holds - as occupied.
+     * @param claims the claimed nights, if any
+     */
+    List<LocalDate> findStayStarts(LocalDate from, LocalDate to, int nights, @Nullable NightReservations claims) {
+
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+        if (toDay <= fromDay) {
+            return List.of();
+        }
+
+        // the free nights from the start of the window to the end of the last stay
+        int length = (int) ((toDay - fromDay + nights - 1 + BITS_PER_WORD - 1) >>> ADDRESS_BITS_PER_WORD);
+
+        long stamp = stampedLock.tryOptimisticRead();
+        long[] free = copyFree(words, baseDay, fromDay, length);
+        if (!stampedLock.validate(stamp)) {
+            stamp = stampedLock.readLock();
+            try {
+                free = copyFree(words, baseDay, fromDay, length);
+            } finally {
+                stampedLock.unlockRead(stamp);
+            }
+        }
+
+        if (claims != null) {
+            claims.clearClaimed(free, from);
+        }
+
+        return findStayStarts(free, from, to, nights);
+    }
+
+    /**
+     * Find the nights a stay can start on as {@link #findStayStarts(LocalDate, LocalDate, int)} does, in a set of free
+     * nights rather than the index.
+     * @param free words of bits where bit {@code n} of word {@code i} is set when the night {@code 64 * i + n} days after
+     * {@code from} is free, covering every night of the last stay - nights past the last word are taken as occupied
+     */
+    static List<LocalDate> findStayStarts(long[] free, LocalDate from, LocalDate to, int nights) {
+
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+        if (toDay <= fromDay) {
+            return List.of();
+        }
+
+        // plus a word for shifting into
+        int length = free.length + 1;
+        free = Arrays.copyOf(free, length);
+
+        // a stay can start on a night when it and the nights after it, shifted down onto it, are all free
+        long[] starts = free.clone();
+        for (int shift = 1; shift < nights; shift++) {
+            for (int i = 0; i < length - 1; i++) {
+                starts[i] &= (free[i] >>> shift) | (free[i + 1] << (BITS_PER_WORD - shift));
+            }
+        }
+
+        var result = new ArrayList<LocalDate>();
+        for (int i = 0; i < length - 1; i++) {
+            long bits = starts[i];
+            while (bits != 0) {
+                long day = fromDay + ((long) i << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(bits);
+                if (day >= toDay) {
+                    return result;
+                }
+                result.add(LocalDate.ofEpochDay(day));
+                bits &= bits - 1;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Copy the free nights from a day on, as words of bits where bit {@code n} of word {@code i} is the night
+     * {@code 64 * i + n} days after it.
+     */
+    private static long[] copyFree(long[] words, long baseDay, long fromDay, int length) {
+
+        long offset = fromDay - baseDay;
+        long wordIndex = Math.floorDiv(offset, BITS_PER_WORD);
+        int bit = Math.floorMod(offset, BITS_PER_WORD);
+
+        var free = new long[length];
+        for (int i = 0; i < length; i++) {
+            long occupied = wordAt(words, wordIndex + i) >>> bit;
+            if (bit != 0) {
+                occupied |= wordAt(words, wordIndex + i + 1) << (BITS_PER_WORD - bit);
+            }
+            free[i] = ~occupied;
+        }
+
+        return free;
+    }
+
+    private static long wordAt(long[] words, long index) {
+        // outside the indexed range, nothing is occupied
+        return index < 0 || index >= words.length ? 0 : words[(int) index];
+    }
+
+    private static boolean isSet(long[] words, long baseDay, long day) {
+
+        long offset = day - baseDay;
+        if (offset < 0 || offset >= (long) words.length * BITS_PER_WORD) {
+            return false;
+        }
+
+        return (words[(int) (offset >>> ADDRESS_BITS_PER_WORD)] & (1L << offset)) != 0;
+    }
+
+    private static List<List<LocalDate>> collectFree(long[] words, long baseDay, List<AvailabilityWindowDTO> windows) {
+
+        var free = new ArrayList<List<LocalDate>>(windows.size());
+        for (AvailabilityWindowDTO window : windows) {
+            free.add(collectFree(words, baseDay, window.getFromDate().toEpochDay(), window.getToDate().toEpochDay()));
+        }
+
+        return free;
+    }
+
+    private static List<LocalDate> collectFree(long[] words, long baseDay, long fromDay, long toDay) {
+
+        var free = new ArrayList<LocalDate>((int) Math.max(0, toDay - fromDay));
+        long day = fromDay;
+        while (day < toDay) {
+
+            long offset = day - baseDay;
+            if (offset < 0 || offset >= (long) words.length * BITS_PER_WORD) {
+                // outside the indexed range, nothing is occupied
+                free.add(LocalDate.ofEpochDay(day++));
+                continue;
+            }
+
+            // take the free bits of the remainder of this word, bounded by the window
+            int bit = (int) (offset & (BITS_PER_WORD - 1));
+            long wordStartDay = day - bit;
+            long freeBits = ~words[(int) (offset >>> ADDRESS_BITS_PER_WORD)] & (-1L << bit);
+            long remaining = toDay - wordStartDay;
+            if (remaining < BITS_PER_WORD) {
+                freeBits &= (1L << remaining) - 1;
+            }
+
+            while (freeBits != 0) {
+                free.add(LocalDate.ofEpochDay(wordStartDay + Long.numberOfTrailingZeros(freeBits)));
+                freeBits &= freeBits - 1;
+            }
+
+            day = wordStartDay + BITS_PER_WORD;
+        }
+
+        return free;
+    }
+
+    private void setRange(long fromDay, long toDay, boolean occupied) {
+
+        if (fromDay >= toDay) {
+            return;
+        }
+
+        if (occupied) {
+            ensureCapacity(fromDay, toDay);
+        }
+
+        for (long day = fromDay; day < toDay; day++) {
+            long offset = day - baseDay;
+            if (offset < 0 || offset >= (long) words.length * BITS_PER_WORD) {
+                // releasing a night we never indexed
+                continue;
+            }
+
+            int wordIndex = (int) (offset >>> ADDRESS_BITS_PER_WORD);
+            if (occupied) {
+                words[wordIndex] |= 1L << offset;
+            } else {
+                words[wordIndex] &= ~(1L << offset);
+            }
+        }
+    }
+
+    private void ensureCapacity(long fromDay, long toDay) {
+
+        long alignedFrom = Math.floorDiv(fromDay, BITS_PER_WORD) * BITS_PER_WORD;
+        long alignedTo = Math.floorDiv(toDay - 1, BITS_PER_WORD) * BITS_PER_WORD + BITS_PER_WORD;
+
+        if (words.length == 0) {
+            baseDay = alignedFrom;
+            words = new long[(int) ((alignedTo - alignedFrom) >>> ADDRESS_BITS_PER_WORD)];
+            return;
+        }
+
+        long currentEnd = baseDay + (long) words.length * BITS_PER_WORD;
+        if (alignedFrom >= baseDay && alignedTo <= currentEnd) {
+            return;
+        }
+
+        long newBase = Math.min(baseDay, alignedFrom);
+        long newEnd = Math.max(currentEnd, alignedTo);
+        long[] grown = new long[(int) ((newEnd - newBase) >>> ADDRESS_BITS_PER_WORD)];
+        System.arraycopy(words, 0, grown, (int) ((baseDay - newBase) >>> ADDRESS_BITS_PER_WORD), words.length);
+
+        baseDay = newBase;
+        words = grown;
+    }
+}
@@ -0,0 +1,67 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import ca.andrewmccallum.novapacificisland.booking.dto.StayDTO;
+
+/**
+ * Why a request was rejected, returned in a {@link Validation} rather than thrown - so where most requests are
+ * rejected, as during scraping or retry storms, no stack traces are filled in for them.
+ */
+public final class Rejection {
+
+    public enum Kind {
+        /**
+         * The request is malformed or breaks a booking rule, as an {@link IllegalArgumentException} would be thrown.
+         */
+        INVALID,
+        /**
+         * The dates requested are unavailable, as a {@link DatesUnavailableException} would be thrown.
+         */
+        DATES_UNAVAILABLE,
+        /**
+         * What the request refers to does not exist, as a {@link NoSuchElementException} would be thrown.
+         */
+        NOT_FOUND
+    }
+
+    private final Kind kind;
+    private final String message;
+    private final List<StayDTO> alternatives;
+
+    private Rejection(Kind kind, String message, List<StayDTO> alternatives) {
+        this.kind = kind;
+        this.message = message;
+        this.alternatives = alternatives;
+    }
+
+    public static Rejection invalid(String message) {
+        return new Rejection(Kind.INVALID, message, List.of());
+    }
+
+    public static Rejection notFound(String message) {
+        return new Rejection(Kind.NOT_FOUND, message, List.of());
+    }
+
+    /**
+     * @param alternatives the nearest stays of the same length which are available
+     */
+    public static Rejection datesUnavailable(String message, List<StayDTO> alternatives) {
+        return new Rejection(Kind.DATES_UNAVAILABLE, message, alternatives);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the nearest stays of the same length which are available, if the dates requested are not
+     */
+    public List<StayDTO> getAlternatives() {
+        return alternatives;
+    }
+}
@@ -0,0 +1,28 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+
+/**
+ * A booking write which has been validated against the in-memory state, with any nights it needs claimed, ready to
+ * be persisted.
+ */
+interface StagedWrite {
+
+    /**
+     * Persist the write. Runs within a transaction owned by the caller, and may be called again in a new transaction
+     * if the first rolls back.
+     * @return the booking as persisted
+     */
+    Booking persist();
+
+    /**
+     * Apply the write to the in-memory state, once its transaction has committed.
+     * @param persisted the booking returned by {@link #persist()}
+     */
+    void commit(Booking persisted);
+
+    /**
+     * Release any nights claimed for the write, whether or not it was committed.
+     */
+    void release();
+}
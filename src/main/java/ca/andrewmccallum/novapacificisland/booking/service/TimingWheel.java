@@ -0,0 +1,142 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timing wheel, running tasks once their delay has passed, to the nearest tick.
+ * <p>
+ * Scheduling and cancelling are O(1) - a timeout is queued for the ticker, which places it in the bucket its deadline
+ * hashes to, and cancelling only marks it. Each tick visits a single bucket, running the timeouts due in it and
+ * counting down those a whole turn of the wheel or more away. Tasks run on the ticker thread, so must not block.
+ */
+class TimingWheel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimingWheel.class);
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<Queue<Timeout>> buckets;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final String threadName;
+
+    /**
+     * The number of ticks since the wheel started, only advanced by the ticker.
+     */
+    private volatile long tick;
+
+    private ScheduledExecutorService ticker;
+
+    /**
+     * @param tickDuration the time between ticks, and so the precision of timeouts
+     * @param ticksPerWheel the number of buckets, rounded up to a power of two
+     */
+    TimingWheel(Duration tickDuration, int ticksPerWheel, String threadName) {
+
+        int size = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+        this.tickNanos = tickDuration.toNanos();
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayDeque<>());
+        }
+        this.threadName = threadName;
+    }
+
+    void start() {
+
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    /**
+     * @param task run once the delay has passed, unless cancelled first
+     * @param delay the time until the task runs, rounded up to a whole number of ticks
+     * @return the timeout, which may be cancelled
+     */
+    Timeout schedule(Runnable task, Duration delay) {
+
+        long ticks = Math.max(1, (delay.toNanos() + tickNanos - 1) / tickNanos);
+        var timeout = new Timeout(task, tick + ticks);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Advance the wheel by one tick, running the timeouts due. Only called by the ticker, or in its place.
+     */
+    void tick() {
+
+        long current = ++tick;
+
+        // place the timeouts scheduled since, any already due landing in this tick's bucket
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (!timeout.cancelled) {
+                long deadline = Math.max(timeout.deadline, current);
+                timeout.rounds = (deadline - current) >>> Long.numberOfTrailingZeros(buckets.size());
+                buckets.get((int) (deadline & mask)).add(timeout);
+            }
+        }
+
+        var bucket = buckets.get((int) (current & mask));
+        for (int i = bucket.size(); i > 0; i--) {
+            timeout = bucket.poll();
+            if (timeout.cancelled) {
+                continue;
+            }
+
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                bucket.add(timeout);
+                continue;
+            }
+
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                // one failing task must not stop the others, or the ticker
+                LOGGER.warn("Timeout task failed.", e);
+            }
+        }
+    }
+
+    static final class Timeout {
+
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Stop the task from running, if it has not already.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+    }
+}
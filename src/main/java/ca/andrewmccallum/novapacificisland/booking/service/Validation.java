@@ -0,0 +1,59 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.util.Objects;
+import java.util.function.Function;
+import org.springframework.lang.Nullable;
+
+/**
+ * The outcome of validating a request: either its value, or the {@link Rejection} of it. What follows a valid request
+ * is applied with {@link #map(Function)}, which a rejection skips.
+ */
+public final class Validation<T> {
+
+    @Nullable
+    private final T value;
+    @Nullable
+    private final Rejection rejection;
+
+    private Validation(@Nullable T value, @Nullable Rejection rejection) {
+        this.value = value;
+        this.rejection = rejection;
+    }
+
+    public static <T> Validation<T> valid(@Nullable T value) {
+        return new Validation<>(value, null);
+    }
+
+    public static <T> Validation<T> rejected(Rejection rejection) {
+        return new Validation<>(null, Objects.requireNonNull(rejection));
+    }
+
+    public boolean isValid() {
+        return rejection == null;
+    }
+
+    /**
+     * @throws IllegalStateException if rejected
+     */
+    @Nullable
+    public T getValue() {
+        if (rejection != null) {
+            throw new IllegalStateException("Cannot get the value of a rejected validation.");
+        }
+        return value;
+    }
+
+    /**
+     * @throws IllegalStateException if valid
+     */
+    public Rejection getRejection() {
+        if (rejection == null) {
+            throw new IllegalStateException("Cannot get the rejection of a valid validation.");
+        }
+        return rejection;
+    }
+
+    public <U> Validation<U> map(Function<? super T, ? extends U> mapper) {
+        return rejection == null ? valid(mapper.apply(value)) : rejected(rejection);
+    }
+}
@@ -0,0 +1,13 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+/**
+ * Thrown when a conditional update expects a version of a booking other than the current one.
+ */
+public class VersionMismatchException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public VersionMismatchException(String message) {
+        super(message);
+    }
+}
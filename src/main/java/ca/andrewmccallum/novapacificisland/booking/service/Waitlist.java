@@ -0,0 +1,161 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import ca.andrewmccallum.novapacificisland.booking.dto.BookingDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.HoldDTO;
+import org.springframework.lang.Nullable;
+
+/**
+ * Stays waiting for their nights to be freed, queued by night in the order they joined.
+ * <p>
+ * Each waiting stay is in the queue of every one of its nights, so the stays which may fit nights being freed are
+ * found without scanning the rest. Once promoted to a hold, a stay leaves the queues but can still be looked up until
+ * it leaves the waitlist.
+ */
+class Waitlist {
+
+    private final Map<UUID, Entry> entries = new HashMap<>();
+    private final TreeMap<LocalDate, Set<Entry>> waitingByNight = new TreeMap<>();
+    private long sequence;
+
+    /**
+     * @return the entry for the stay, waiting behind those which joined before it
+     */
+    synchronized Entry add(BookingDTO bookingDTO) {
+
+        var entry = new Entry(UUID.randomUUID(), sequence++, bookingDTO);
+        entries.put(entry.id, entry);
+        nightsOf(entry).forEach(d -> waitingByNight.computeIfAbsent(d, k -> new LinkedHashSet<>()).add(entry));
+        return entry;
+    }
+
+    synchronized @Nullable Entry get(UUID id) {
+        return entries.get(id);
+    }
+
+    /**
+     * @return whether the entry was on the waitlist
+     */
+    synchronized boolean remove(UUID id) {
+
+        var entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+
+        if (entry.hold == null) {
+            unqueue(entry);
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the entry was on the waitlist, and still waiting
+     */
+    synchronized boolean removeWaiting(UUID id) {
+
+        var entry = entries.get(id);
+        return entry != null && entry.hold == null && remove(id);
+    }
+
+    /**
+     * Remove the stays still waiting which check in before a date - only visiting those, as their first night is
+     * queued before it.
+     * @return the number of stays removed
+     */
+    synchronized int removeWaitingBefore(LocalDate checkinDate) {
+
+        var expired = new HashSet<Entry>();
+        waitingByNight.headMap(checkinDate).values().forEach(expired::addAll);
+        expired.forEach(e -> remove(e.id));
+        return expired.size();
+    }
+
+    /**
+     * @param from the first night (inclusive)
+     * @param to the last night (exclusive)
+     * @return the stays still waiting for any of the nights, earliest to join first
+     */
+    synchronized List<Entry> waitingFor(LocalDate from, LocalDate to) {
+
+        var waiting = new TreeSet<Entry>(Comparator.comparingLong(e -> e.sequence));
+        waitingByNight.subMap(from, to).values().forEach(waiting::addAll);
+        return new ArrayList<>(waiting);
+    }
+
+    /**
+     * Stop a stay waiting, as it now holds its nights.
+     * @return whether it was still waiting
+     */
+    synchronized boolean promote(Entry entry, HoldDTO hold) {
+
+        if (entries.get(entry.id) != entry || entry.hold != null) {
+            return false;
+        }
+
+        entry.hold = hold;
+        unqueue(entry);
+        return true;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void unqueue(Entry entry) {
+        nightsOf(entry).forEach(d -> {
+            var waiting = waitingByNight.get(d);
+            if (waiting != null && waiting.remove(entry) && waiting.isEmpty()) {
+                waitingByNight.remove(d);
+            }
+        });
+    }
+
+    private static List<LocalDate> nightsOf(Entry entry) {
+        return entry.bookingDTO.getCheckinDate().datesUntil(entry.bookingDTO.getCheckoutDate())
+                .collect(Collectors.toList());
+    }
+
+    static final class Entry {
+
+        private final UUID id;
+        private final long sequence;
+        private final BookingDTO bookingDTO;
+        @Nullable
+        private volatile HoldDTO hold;
+
+        private Entry(UUID id, long sequence, BookingDTO bookingDTO) {
+            this.id = id;
+            this.sequence = sequence;
+            this.bookingDTO = bookingDTO;
+        }
+
+        UUID getId() {
+            return id;
+        }
+
+        BookingDTO getBookingDTO() {
+            return bookingDTO;
+        }
+
+        /**
+         * @return the hold the stay was promoted to, or null while still waiting
+         */
+        @Nullable
+        HoldDTO getHold() {
+            return hold;
+        }
+    }
+}
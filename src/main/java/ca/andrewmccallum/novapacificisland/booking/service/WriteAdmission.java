@@ -0,0 +1,125 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Admission control for booking writes, bounding how many are made at once, how many wait, and for how long.
+ * <p>
+ * A write beyond those bounds is rejected straight away, rather than tying up a request thread which reads could
+ * otherwise be served on. Its rejection estimates when to retry from the average time writes have been taking.
+ */
+class WriteAdmission {
+
+    private static final String ERROR_OVERLOADED = "Too many bookings are being made, please retry.";
+
+    /**
+     * The weight given to each write's duration in the moving average.
+     */
+    private static final double AVERAGE_WEIGHT = 0.2;
+
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong averageNanos = new AtomicLong();
+    private final LongAdder rejectedQueueFull = new LongAdder();
+    private final LongAdder rejectedTimeout = new LongAdder();
+
+    /**
+     * @param maxConcurrent the number of writes made at once
+     * @param maxQueued the number of writes waiting, beyond which more are rejected
+     * @param maxWait how long a write waits before it is rejected
+     */
+    WriteAdmission(int maxConcurrent, int maxQueued, Duration maxWait) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    /**
+     * Make a write once admitted.
+     * @throws WritesOverloadedException if too many writes are waiting, or it waited too long
+     */
+    <T> T admit(Supplier<T> write) {
+
+        // unlike tryAcquire(), a timed acquire honours fairness, so never takes a permit ahead of writes waiting
+        if (!tryAcquireNow()) {
+            await();
+        }
+
+        long start = System.nanoTime();
+        try {
+            return write.get();
+        } finally {
+            permits.release();
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the number of writes waiting to be admitted
+     */
+    int queued() {
+        return queued.get();
+    }
+
+    long rejectedQueueFull() {
+        return rejectedQueueFull.sum();
+    }
+
+    long rejectedTimeout() {
+        return rejectedTimeout.sum();
+    }
+
+    private boolean tryAcquireNow() {
+        try {
+            return permits.tryAcquire(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void await() {
+
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejectedQueueFull.increment();
+            throw overloaded();
+        }
+
+        try {
+            if (!permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                rejectedTimeout.increment();
+                throw overloaded();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedTimeout.increment();
+            throw overloaded();
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private WritesOverloadedException overloaded() {
+
+        // the writes ahead of a retry are made maxConcurrent at a time
+        long waitNanos = averageNanos.get() * (queued.get() + 1) / maxConcurrent;
+        return new WritesOverloadedException(ERROR_OVERLOADED, Duration.ofNanos(waitNanos));
+    }
+
+    private void record(long nanos) {
+        // racing updates may lose one, which an average can afford
+        long average = averageNanos.get();
+        averageNanos.set(average == 0 ? nanos : (long) (average + AVERAGE_WEIGHT * (nanos - average)));
+    }
+}
@@ -0,0 +1,26 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a booking write is turned away rather than kept waiting, as too many are already in progress.
+ */
+public class WritesOverloadedException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Duration retryAfter;
+
+    public WritesOverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return roughly how long until the writes in progress and waiting have been made
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
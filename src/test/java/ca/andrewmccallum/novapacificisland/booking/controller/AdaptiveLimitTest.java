@@ -0,0 +1,100 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimitTest {
+
+    private static final Duration FAST = Duration.ofMillis(10);
+    private static final Duration SLOW = Duration.ofMillis(200);
+
+    private long nanoTime;
+    private final AdaptiveLimit limit = new AdaptiveLimit(20, 4, 100, () -> nanoTime);
+
+    @Test
+    void acquire_shed_whenAtLimit() {
+
+        for (int i = 0; i < 20; i++) {
+            limit.acquire();
+        }
+
+        assertThrows(RejectedExecutionException.class, limit::acquire);
+        assertEquals(1, limit.shed());
+        assertEquals(20, limit.inFlight());
+    }
+
+    @Test
+    void limit_grows_whileLatencySteady() {
+
+        rounds(10, FAST);
+
+        assertTrue(limit.limit() > 20, "limit " + limit.limit());
+    }
+
+    @Test
+    void limit_shrinks_whenRepositorySlows() {
+
+        rounds(10, FAST);
+        int steady = limit.limit();
+
+        // a slow repository backs up every call behind it
+        rounds(10, SLOW);
+
+        assertTrue(limit.limit() < steady / 2, "limit " + limit.limit() + " from " + steady);
+        assertTrue(limit.limit() >= 4);
+    }
+
+    @Test
+    void limit_recovers_whenRepositoryRecovers() {
+
+        rounds(10, FAST);
+        rounds(10, SLOW);
+        int slowed = limit.limit();
+
+        rounds(10, FAST);
+
+        assertTrue(limit.limit() > slowed, "limit " + limit.limit() + " from " + slowed);
+    }
+
+    @Test
+    void limit_unchanged_whenFarUnderLimit() {
+
+        for (int i = 0; i < 100; i++) {
+            long start = limit.acquire();
+            nanoTime += FAST.toNanos();
+            limit.release(start);
+        }
+
+        assertEquals(20, limit.limit());
+    }
+
+    @Test
+    void dropped_backsOffLimit() {
+
+        limit.acquire();
+        limit.dropped();
+
+        assertEquals(18, limit.limit());
+        assertEquals(0, limit.inFlight());
+    }
+
+    /**
+     * Fill the limit with calls which each take the latency, then complete them together.
+     */
+    private void rounds(int rounds, Duration latency) {
+
+        for (int round = 0; round < rounds; round++) {
+            var starts = new ArrayList<Long>();
+            for (int i = limit.limit(); i > 0; i--) {
+                starts.add(limit.acquire());
+            }
+
+            nanoTime += latency.toNanos();
+            starts.forEach(limit::release);
+        }
+    }
+}
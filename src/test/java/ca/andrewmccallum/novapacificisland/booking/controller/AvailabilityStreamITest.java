@@ -0,0 +1,83 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import ca.andrewmccallum.novapacificisland.booking.dto.BookingDTO;
+import ca.andrewmccallum.novapacificisland.booking.service.BookingService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class AvailabilityStreamITest {
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private BookingService bookingService;
+    @Autowired
+    private AvailabilityStream availabilityStream;
+    @Autowired
+    private Clock clock;
+
+    @Test
+    void stream_success_pushesChangesOfCommittedBookings() throws Exception {
+
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/booking/availability/stream"))
+                .header("Accept", "text/event-stream")
+                .timeout(Duration.ofSeconds(10))
+                .build();
+        var response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+
+        Iterator<String> lines = response.body().iterator();
+        assertEquals("event:" + AvailabilityStream.EVENT_RESYNC, nextEvent(lines).get(0));
+        assertEquals(1, availabilityStream.subscribers());
+
+        var checkinDate = LocalDate.now(clock).plusDays(20);
+        var bookingId = bookingService.createBooking(new BookingDTO(checkinDate, checkinDate.plusDays(2), "a@a.com", "a a"));
+        try {
+            for (LocalDate night : List.of(checkinDate, checkinDate.plusDays(1))) {
+                var event = nextEvent(lines);
+                assertTrue(event.contains("event:" + AvailabilityStream.EVENT_CHANGE));
+                assertTrue(event.stream().anyMatch(l -> l.startsWith("data:")
+                        && l.contains("\"night\":\"" + night + "\"") && l.contains("\"occupied\":true")));
+            }
+        } finally {
+            bookingService.cancelBooking(bookingId);
+            response.body().close();
+        }
+    }
+
+    /**
+     * @return the lines of the next event
+     */
+    private static List<String> nextEvent(Iterator<String> lines) {
+
+        var event = new ArrayList<String>();
+        while (lines.hasNext()) {
+            var line = lines.next();
+            if (line.isEmpty()) {
+                if (!event.isEmpty()) {
+                    return event;
+                }
+            } else {
+                event.add(line);
+            }
+        }
+
+        fail("Stream ended before the next event.");
+        return event;
+    }
+}
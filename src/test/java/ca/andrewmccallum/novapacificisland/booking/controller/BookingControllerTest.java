@@ -0,0 +1,442 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.List;
+import java.util.Locale;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityBitmapDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityRangesDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityWindowDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.BookingDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.HoldDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.StayDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.Versioned;
+import ca.andrewmccallum.novapacificisland.booking.service.BookingService;
+import ca.andrewmccallum.novapacificisland.booking.service.DatesUnavailableException;
+import ca.andrewmccallum.novapacificisland.booking.service.Rejection;
+import ca.andrewmccallum.novapacificisland.booking.service.Validation;
+import ca.andrewmccallum.novapacificisland.booking.service.VersionMismatchException;
+import ca.andrewmccallum.novapacificisland.booking.service.WritesOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.ResultHandler;
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(BookingController.class)
+@Import({IdempotencyStore.class, Bulkheads.class, ConcurrencyLimits.class, SimpleMeterRegistry.class})
+class BookingControllerTest {
+
+    private static final UUID ID = UUID.fromString("03c09a44-1168-4080-8478-6d8d258a4ea0");
+    private static final BookingDTO BOOKING =
+            new BookingDTO(LocalDate.of(2021, 7, 27), LocalDate.of(2021, 7, 29), "email@booking.test", "Booking User");
+    private static final String BOOKING_JSON = "{\"checkinDate\":\"2021-07-27\",\"checkoutDate\":\"2021-07-29\","
+            + "\"email\":\"email@booking.test\",\"fullName\":\"Booking User\"}";
+
+    private static final LocalDate FROM_DATE = LocalDate.of(2021, 7, 27);
+    /**
+     * Dates are bound in the short format of the request's locale, which is English by default.
+     */
+    private static final String FROM_DATE_PARAM =
+            DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).withLocale(Locale.ENGLISH).format(FROM_DATE);
+
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private BookingService bookingService;
+    @MockBean
+    private AvailabilityStream availabilityStream;
+
+    @Test
+    void availability_success_withETag() throws Exception {
+
+        when(bookingService.getOccupancyVersion()).thenReturn(OptionalLong.of(7L));
+        when(bookingService.findAvailability(FROM_DATE, null)).thenReturn(List.of(FROM_DATE));
+
+        perform(get("/booking/availability").param("fromDate", FROM_DATE_PARAM))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2021-07-27//7\""))
+                .andExpect(jsonPath("$[0]").value("2021-07-27"));
+    }
+
+    @Test
+    void availability_notModified_whenIfNoneMatchCurrent() throws Exception {
+
+        when(bookingService.getOccupancyVersion()).thenReturn(OptionalLong.of(7L));
+
+        perform(get("/booking/availability").param("fromDate", FROM_DATE_PARAM)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"2021-07-27//7\""))
+                .andExpect(status().isNotModified());
+        verify(bookingService, never()).findAvailability(any(), any());
+    }
+
+    @Test
+    void availability_success_whenIfNoneMatchStale() throws Exception {
+
+        when(bookingService.getOccupancyVersion()).thenReturn(OptionalLong.of(8L));
+        when(bookingService.findAvailability(FROM_DATE, null)).thenReturn(List.of());
+
+        perform(get("/booking/availability").param("fromDate", FROM_DATE_PARAM)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"2021-07-27//7\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2021-07-27//8\""));
+    }
+
+    @Test
+    void availability_success_withoutETag_whenVersionUnknown() throws Exception {
+
+        when(bookingService.getOccupancyVersion()).thenReturn(OptionalLong.empty());
+        when(bookingService.findAvailability(FROM_DATE, null)).thenReturn(List.of(FROM_DATE));
+
+        perform(get("/booking/availability").param("fromDate", FROM_DATE_PARAM))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void availability_success_asRanges_whenFormatParam() throws Exception {
+
+        when(bookingService.getOccupancyVersion()).thenReturn(OptionalLong.of(7L));
+        when(bookingService.findAvailabilityRanges(FROM_DATE, null)).thenReturn(new AvailabilityRangesDTO(FROM_DATE,
+                FROM_DATE.plusMonths(1), List.of(List.of(FROM_DATE, FROM_DATE.plusDays(2)))));
+
+        perform(get("/booking/availability").param("fromDate", FROM_DATE_PARAM).param("format", "ranges"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(AvailabilityRangesDTO.MEDIA_TYPE))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2021-07-27//7/ranges\""))
+                .andExpect(jsonPath("$.free[0][0]").value("2021-07-27"))
+                .andExpect(jsonPath("$.free[0][1]").value("2021-07-29"));
+    }
+
+    @Test
+    void availability_success_asBitmap_whenAccepted() throws Exception {
+
+        when(bookingService.findAvailabilityBitmap(FROM_DATE, null))
+                .thenReturn(new AvailabilityBitmapDTO(FROM_DATE, FROM_DATE.plusMonths(1), "Aw=="));
+
+        perform(get("/booking/availability").param("fromDate", FROM_DATE_PARAM)
+                        .accept(AvailabilityBitmapDTO.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(AvailabilityBitmapDTO.MEDIA_TYPE))
+                .andExpect(jsonPath("$.free").value("Aw=="));
+    }
+
+    @Test
+    void availability_fails_whenFormatInvalid() throws Exception {
+
+        perform(get("/booking/availability").param("fromDate", FROM_DATE_PARAM).param("format", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void stayStarts_success() throws Exception {
+
+        when(bookingService.findStayStarts(FROM_DATE, null, 2)).thenReturn(List.of(FROM_DATE.plusDays(1)));
+
+        perform(get("/booking/availability/starts").param("fromDate", FROM_DATE_PARAM).param("nights", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0]").value("2021-07-28"));
+    }
+
+    @Test
+    void availabilityBatch_success() throws Exception {
+
+        when(bookingService.findAvailability(List.of(
+                new AvailabilityWindowDTO(FROM_DATE, LocalDate.of(2021, 7, 29)),
+                new AvailabilityWindowDTO(FROM_DATE, null))))
+                .thenReturn(List.of(List.of(FROM_DATE), List.of()));
+
+        perform(post("/booking/availability/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"fromDate\":\"2021-07-27\",\"toDate\":\"2021-07-29\"},{\"fromDate\":\"2021-07-27\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0][0]").value("2021-07-27"))
+                .andExpect(jsonPath("$[1]").isEmpty());
+    }
+
+    @Test
+    void create_success_validatedOnce() throws Exception {
+
+        when(bookingService.tryCreateBooking(BOOKING)).thenReturn(Validation.valid(ID));
+
+        perform(post("/booking")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BOOKING_JSON))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$").value(ID.toString()));
+
+        verify(bookingService, never()).validateBooking(any());
+        verify(bookingService, never()).createBooking(any());
+    }
+
+    @Test
+    void create_fails_withRetryAfter_whenWritesOverloaded() throws Exception {
+
+        when(bookingService.tryCreateBooking(BOOKING)).thenThrow(
+                new WritesOverloadedException("Too many bookings are being made, please retry.", Duration.ofMillis(1500)));
+
+        perform(post("/booking")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BOOKING_JSON))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"));
+    }
+
+    @Test
+    void joinWaitlist_fails_withRetryAfter_whenWaitlistFull() throws Exception {
+
+        when(bookingService.joinWaitlist(BOOKING)).thenThrow(new RejectedExecutionException("The waitlist is full."));
+
+        perform(post("/booking/waitlist")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BOOKING_JSON))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(content().string("The waitlist is full."));
+    }
+
+    @Test
+    void create_fails_withAlternatives_whenDatesUnavailable() throws Exception {
+
+        when(bookingService.tryCreateBooking(BOOKING)).thenReturn(Validation.rejected(Rejection.datesUnavailable(
+                "The date(s) requested are no longer available.",
+                List.of(new StayDTO(LocalDate.of(2021, 7, 30), LocalDate.of(2021, 8, 1))))));
+
+        perform(post("/booking")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BOOKING_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.message").value("The date(s) requested are no longer available."))
+                .andExpect(jsonPath("$.alternatives[0].checkinDate").value("2021-07-30"))
+                .andExpect(jsonPath("$.alternatives[0].checkoutDate").value("2021-08-01"));
+
+        verify(bookingService, never()).createBooking(any());
+    }
+
+    @Test
+    void create_fails_withAlternatives_whenDatesTakenAfterValidation() throws Exception {
+
+        when(bookingService.tryCreateBooking(any())).thenThrow(new DatesUnavailableException(
+                "The date(s) requested are no longer available.",
+                null,
+                List.of(new StayDTO(LocalDate.of(2021, 7, 30), LocalDate.of(2021, 8, 1)))));
+
+        perform(post("/booking")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BOOKING_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.message").value("The date(s) requested are no longer available."))
+                .andExpect(jsonPath("$.alternatives[0].checkinDate").value("2021-07-30"))
+                .andExpect(jsonPath("$.alternatives[0].checkoutDate").value("2021-08-01"));
+    }
+
+    @Test
+    void create_success_replayed_whenIdempotencyKeyRepeated() throws Exception {
+
+        when(bookingService.createBooking(BOOKING)).thenReturn(ID);
+
+        for (int i = 0; i < 2; i++) {
+            perform(post("/booking")
+                            .header(IdempotencyStore.HEADER, "create-once")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(BOOKING_JSON))
+                    .andExpect(status().isCreated())
+                    .andExpect(content().string("\"" + ID + "\""));
+        }
+
+        verify(bookingService, times(1)).createBooking(BOOKING);
+    }
+
+    @Test
+    void create_fails_whenIdempotencyKeyReusedForDifferentRequest() throws Exception {
+
+        when(bookingService.createBooking(BOOKING)).thenReturn(ID);
+
+        perform(post("/booking")
+                        .header(IdempotencyStore.HEADER, "create-other")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BOOKING_JSON))
+                .andExpect(status().isCreated());
+        perform(post("/booking")
+                        .header(IdempotencyStore.HEADER, "create-other")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BOOKING_JSON.replace("Booking User", "Other User")))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Idempotency-Key has already been used for a different request."));
+    }
+
+    @Test
+    void hold_success_thenConfirm() throws Exception {
+
+        var holdId = UUID.fromString("5f0b3c1e-8a54-4c8e-9a43-2d6c1f0e7b21");
+        when(bookingService.holdBooking(BOOKING)).thenReturn(new HoldDTO(holdId, Instant.parse("2021-07-26T12:05:00Z")));
+        when(bookingService.confirmHold(holdId)).thenReturn(ID);
+
+        perform(post("/booking/holds")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BOOKING_JSON))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.holdId").value(holdId.toString()))
+                .andExpect(jsonPath("$.expiresAt").value("2021-07-26T12:05:00Z"));
+
+        perform(post("/booking/holds/{id}/confirm", holdId))
+                .andExpect(status().isCreated())
+                .andExpect(content().string("\"" + ID + "\""));
+    }
+
+    @Test
+    void retrieve_success_withETag() throws Exception {
+
+        when(bookingService.findVersionedBooking(ID)).thenReturn(Validation.valid(new Versioned<>(BOOKING, 4L)));
+
+        perform(get("/booking/{id}", ID))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(jsonPath("$.fullName").value("Booking User"));
+    }
+
+    @Test
+    void retrieve_notFound() throws Exception {
+
+        when(bookingService.findVersionedBooking(ID))
+                .thenReturn(Validation.rejected(Rejection.notFound("Cannot find booking with specified ID.")));
+
+        perform(get("/booking/{id}", ID))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void retrieve_fails_whenIdInvalid() throws Exception {
+
+        perform(get("/booking/{id}", "not-a-booking-id"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Invalid ID provided."));
+
+        verify(bookingService, never()).findVersionedBooking(any());
+    }
+
+    @Test
+    void modify_success_whenIfMatchCurrent() throws Exception {
+
+        when(bookingService.updateBooking(eq(ID), any(), eq(4L))).thenReturn(new Versioned<>(BOOKING, 5L));
+
+        perform(patch("/booking/{id}", ID)
+                        .header(HttpHeaders.IF_MATCH, "\"4\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"fullName\":\"Booking User\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""));
+    }
+
+    @Test
+    void modify_success_whenNoIfMatch() throws Exception {
+
+        when(bookingService.updateBooking(eq(ID), any(), isNull())).thenReturn(new Versioned<>(BOOKING, 5L));
+
+        perform(patch("/booking/{id}", ID)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"fullName\":\"Booking User\"}"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void modify_fails_whenIfMatchStale() throws Exception {
+
+        when(bookingService.updateBooking(eq(ID), any(), eq(3L)))
+                .thenThrow(new VersionMismatchException("Booking has been modified since the version provided."));
+
+        perform(patch("/booking/{id}", ID)
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"fullName\":\"Booking User\"}"))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void modify_fails_withPlainText_whenDatesUnavailable() throws Exception {
+
+        when(bookingService.updateBooking(eq(ID), any(), isNull()))
+                .thenThrow(new DatesUnavailableException("The date(s) requested are no longer available."));
+
+        perform(patch("/booking/{id}", ID)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"checkinDate\":\"2021-07-30\",\"checkoutDate\":\"2021-08-01\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+                .andExpect(content().string("The date(s) requested are no longer available."));
+    }
+
+    @Test
+    void modify_fails_whenIfMatchInvalid() throws Exception {
+
+        perform(patch("/booking/{id}", ID)
+                        .header(HttpHeaders.IF_MATCH, "W/\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"fullName\":\"Booking User\"}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Handlers answer asynchronously off their bulkhead, so the response is only complete once dispatched back.
+     */
+    private ResultActions perform(RequestBuilder request) throws Exception {
+
+        var result = mockMvc.perform(request).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            return mockMvc.perform(asyncDispatch(result));
+        }
+
+        // rejected or failed before the handler returned
+        return new ResultActions() {
+            @Override
+            public ResultActions andExpect(ResultMatcher matcher) throws Exception {
+                matcher.match(result);
+                return this;
+            }
+
+            @Override
+            public ResultActions andDo(ResultHandler handler) throws Exception {
+                handler.handle(result);
+                return this;
+            }
+
+            @Override
+            public MvcResult andReturn() {
+                return result;
+            }
+        };
+    }
+}
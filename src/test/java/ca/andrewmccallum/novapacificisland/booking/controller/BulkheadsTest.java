@@ -0,0 +1,153 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import ca.andrewmccallum.novapacificisland.booking.repository.BookingNightRepository;
+import ca.andrewmccallum.novapacificisland.booking.repository.BookingRepository;
+import ca.andrewmccallum.novapacificisland.booking.service.BookingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BulkheadsTest {
+
+    private static final long FAST_MILLIS = 20;
+    private static final long SLOW_MILLIS = 200;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Bulkheads bulkheads =
+            new Bulkheads(new ConcurrencyLimits(meterRegistry, 20, 4, 200), meterRegistry, 1, 1, 1, 1);
+    private final CountDownLatch blocked = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        blocked.countDown();
+        bulkheads.stop();
+    }
+
+    @Test
+    void write_rejected_whenWritesFull() {
+
+        bulkheads.write("block", this::block);
+        bulkheads.write("block", this::block);
+
+        assertThrows(RejectedExecutionException.class, () -> bulkheads.write("rejected", () -> "rejected"));
+        assertEquals(1, meterRegistry.get(Bulkheads.REJECTIONS).tag("bulkhead", "writes").counter().count());
+        assertEquals(0, meterRegistry.get(Bulkheads.REJECTIONS).tag("bulkhead", "reads").counter().count());
+        // a full bulkhead backs off the endpoint's limit
+        assertEquals(18, meterRegistry.get(ConcurrencyLimits.LIMIT_GAUGE).tag("endpoint", "rejected").gauge().value());
+    }
+
+    @Test
+    void write_limitKept_whenServiceRejects() {
+
+        var rejected = bulkheads.write("joinWaitlist", () -> {
+            throw new RejectedExecutionException("The waitlist is full.");
+        });
+
+        assertThrows(CompletionException.class, rejected::join);
+        assertEquals(20, meterRegistry.get(ConcurrencyLimits.LIMIT_GAUGE).tag("endpoint", "joinWaitlist").gauge().value());
+        assertEquals(0, meterRegistry.get(ConcurrencyLimits.IN_FLIGHT_GAUGE).tag("endpoint", "joinWaitlist").gauge().value());
+    }
+
+    @Test
+    void read_limitShrinks_whenRepositorySlows() {
+
+        var delayMillis = new AtomicLong(FAST_MILLIS);
+        var bookingRepository = mock(BookingRepository.class);
+        when(bookingRepository.findById(any())).thenAnswer(invocation -> {
+            Thread.sleep(delayMillis.get());
+            return Optional.empty();
+        });
+        var bookingService = new BookingService(bookingRepository, mock(BookingNightRepository.class),
+                Clock.systemUTC(), mock(PlatformTransactionManager.class), meterRegistry);
+
+        // threads enough for the largest limit, so calls are only ever as slow as the repository
+        var limited = new Bulkheads(new ConcurrencyLimits(meterRegistry, 20, 4, 200), meterRegistry, 200, 200, 1, 1);
+        try {
+            retrieveRounds(limited, bookingService, 10);
+            double steady = limitOf("retrieve");
+
+            delayMillis.set(SLOW_MILLIS);
+            retrieveRounds(limited, bookingService, 5);
+
+            assertTrue(limitOf("retrieve") < steady / 2, "limit " + limitOf("retrieve") + " from " + steady);
+        } finally {
+            limited.stop();
+        }
+    }
+
+    @Test
+    void read_runs_whenWritesFull() throws Exception {
+
+        bulkheads.write("block", this::block);
+        bulkheads.write("block", this::block);
+
+        assertEquals("read", bulkheads.read("read", () -> "read").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void read_shed_whenEndpointAtLimit() throws Exception {
+
+        var limited = new Bulkheads(new ConcurrencyLimits(meterRegistry, 1, 1, 1), meterRegistry, 2, 2, 1, 1);
+        try {
+            limited.read("slow", this::block);
+
+            assertThrows(RejectedExecutionException.class, () -> limited.read("slow", () -> "shed"));
+            assertEquals(1, meterRegistry.get(ConcurrencyLimits.SHED).tag("endpoint", "slow").functionCounter().count());
+            assertEquals(1, meterRegistry.get(ConcurrencyLimits.LIMIT_GAUGE).tag("endpoint", "slow").gauge().value());
+
+            // other endpoints keep their own limits
+            assertEquals("fast", limited.read("fast", () -> "fast").get(5, TimeUnit.SECONDS));
+        } finally {
+            blocked.countDown();
+            limited.stop();
+        }
+    }
+
+    /**
+     * Fill the endpoint's limit with retrievals, then wait for them all to complete.
+     */
+    private void retrieveRounds(Bulkheads limited, BookingService bookingService, int rounds) {
+
+        for (int round = 0; round < rounds; round++) {
+            var calls = new ArrayList<CompletableFuture<?>>();
+            try {
+                for (int i = (int) limitOf("retrieve"); i > 0; i--) {
+                    calls.add(limited.read("retrieve", () -> bookingService.findVersionedBooking(UUID.randomUUID())));
+                }
+            } catch (RejectedExecutionException e) {
+                // the limit shrank while filling it
+            }
+            CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).join();
+        }
+    }
+
+    private double limitOf(String endpoint) {
+        var gauge = meterRegistry.find(ConcurrencyLimits.LIMIT_GAUGE).tag("endpoint", endpoint).gauge();
+        return gauge == null ? 20 : gauge.value();
+    }
+
+    private String block() {
+        try {
+            blocked.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "blocked";
+    }
+}
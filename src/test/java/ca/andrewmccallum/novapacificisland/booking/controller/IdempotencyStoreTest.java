@@ -0,0 +1,146 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyStoreTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final IdempotencyStore idempotencyStore = new IdempotencyStore(Duration.ofSeconds(60), 2, nanoTime::get);
+    private final AtomicInteger made = new AtomicInteger();
+
+    @Test
+    void execute_success_replaysResponse() {
+
+        var first = idempotencyStore.execute("key", "request", this::make);
+        var second = idempotencyStore.execute("key", "request", this::make);
+
+        assertSame(first.join(), second.join());
+        assertEquals(1, made.get());
+    }
+
+    @Test
+    void execute_success_answersRetry_onceFirstAttemptCompletes() {
+
+        var response = new CompletableFuture<ResponseEntity<Integer>>();
+        var first = idempotencyStore.execute("key", "request", () -> response);
+        var second = idempotencyStore.execute("key", "request", this::make);
+
+        // waiting, without a thread blocked on it
+        assertFalse(second.isDone());
+
+        response.complete(ResponseEntity.ok(7));
+        assertEquals(7, first.join().getBody());
+        assertEquals(7, second.join().getBody());
+        assertEquals(0, made.get());
+    }
+
+    @Test
+    void execute_success_makesRequest_whenNoKey() {
+
+        idempotencyStore.execute(null, "request", this::make);
+        idempotencyStore.execute(null, "request", this::make);
+
+        assertEquals(2, made.get());
+        assertEquals(0, idempotencyStore.size());
+    }
+
+    @Test
+    void execute_fails_whenKeyUsedForDifferentRequest() {
+
+        idempotencyStore.execute("key", "request", this::make);
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> idempotencyStore.execute("key", "other request", this::make));
+        assertEquals("Idempotency-Key has already been used for a different request.", exception.getMessage());
+    }
+
+    @Test
+    void execute_success_retries_whenFirstAttemptFailed() {
+
+        assertThrows(IllegalStateException.class, () -> idempotencyStore.execute("key", "request", () -> {
+            throw new IllegalStateException("Database unavailable.");
+        }));
+
+        assertEquals(1, idempotencyStore.execute("key", "request", this::make).join().getBody());
+    }
+
+    @Test
+    void execute_success_retries_whenFirstAttemptCompletedExceptionally() {
+
+        var failed = idempotencyStore.execute("key", "request",
+                () -> CompletableFuture.<ResponseEntity<Integer>>failedFuture(new IllegalStateException("Database unavailable.")));
+
+        CompletionException exception = assertThrows(CompletionException.class, failed::join);
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+        assertEquals(1, idempotencyStore.execute("key", "request", this::make).join().getBody());
+    }
+
+    @Test
+    void execute_success_makesRequestAgain_whenKeyExpired() {
+
+        idempotencyStore.execute("key", "request", this::make);
+        nanoTime.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        assertEquals(2, idempotencyStore.execute("key", "other request", this::make).join().getBody());
+    }
+
+    @Test
+    void execute_success_evictsOldestAnswered_whenFull() {
+
+        idempotencyStore.execute("a", "request", this::make);
+        idempotencyStore.execute("b", "request", this::make);
+
+        // full of answered keys, none expired
+        assertEquals(3, idempotencyStore.execute("c", "request", this::make).join().getBody());
+        assertEquals(2, idempotencyStore.size());
+
+        // the oldest made room, so is made again - the newer one is still replayed
+        assertEquals(2, idempotencyStore.execute("b", "request", this::make).join().getBody());
+        assertEquals(4, idempotencyStore.execute("a", "request", this::make).join().getBody());
+        assertEquals(4, made.get());
+    }
+
+    @Test
+    void execute_fails_whenFull_ofRequestsInProgress() {
+
+        var inProgress = new CompletableFuture<ResponseEntity<Integer>>();
+        idempotencyStore.execute("a", "request", () -> inProgress);
+        idempotencyStore.execute("b", "request", () -> inProgress);
+
+        RejectedExecutionException exception = assertThrows(RejectedExecutionException.class,
+                () -> idempotencyStore.execute("c", "request", this::make));
+        assertEquals("Too many requests with an Idempotency-Key are in progress, please retry.", exception.getMessage());
+
+        // once one is answered, it makes room
+        inProgress.complete(ResponseEntity.ok(0));
+        assertEquals(1, idempotencyStore.execute("c", "request", this::make).join().getBody());
+    }
+
+    @Test
+    void execute_success_evictsExpiredFirst() {
+
+        idempotencyStore.execute("a", "request", this::make);
+        nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+        idempotencyStore.execute("b", "request", this::make);
+
+        // only the oldest key has expired, making room for one
+        nanoTime.addAndGet(Duration.ofSeconds(31).toNanos());
+        assertEquals(3, idempotencyStore.execute("c", "request", this::make).join().getBody());
+        assertEquals(2, idempotencyStore.execute("b", "request", this::make).join().getBody());
+        assertEquals(2, idempotencyStore.size());
+        assertEquals(3, made.get());
+    }
+
+    private CompletableFuture<ResponseEntity<Integer>> make() {
+        return CompletableFuture.completedFuture(ResponseEntity.ok(made.incrementAndGet()));
+    }
+}
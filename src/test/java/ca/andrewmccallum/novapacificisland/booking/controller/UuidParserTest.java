@@ -0,0 +1,37 @@
+package ca.andrewmccallum.novapacificisland.booking.controller;
+
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UuidParserTest {
+
+    @Test
+    void parse_success_whenCanonical() {
+
+        var uuid = UUID.randomUUID();
+
+        assertEquals(uuid, UuidParser.parse(uuid.toString()));
+        assertEquals(uuid, UuidParser.parse(uuid.toString().toUpperCase()));
+    }
+
+    @Test
+    void parse_success_whenLeadingZerosLeftOut() {
+        assertEquals(UUID.fromString("1-2-3-4-5"), UuidParser.parse("1-2-3-4-5"));
+    }
+
+    @Test
+    void parse_null_whenInvalid() {
+
+        assertNull(UuidParser.parse(null));
+        assertNull(UuidParser.parse(""));
+        assertNull(UuidParser.parse("not-a-booking-id"));
+        assertNull(UuidParser.parse("03c09a44-1168-4080-8478"));
+        assertNull(UuidParser.parse("03c09a44-1168-4080-8478-6d8d258a4ea0-1"));
+        assertNull(UuidParser.parse("03c09a44-1168-4080--6d8d258a4ea0"));
+        assertNull(UuidParser.parse("03c09a44-1168-4080-8478-6d8d258a4ea0a"));
+        assertNull(UuidParser.parse("03c09a4g-1168-4080-8478-6d8d258a4ea0"));
+        assertNull(UuidParser.parse("03c09a44-11680-408-8478-6d8d258a4ea0"));
+    }
+}
@@ -0,0 +1,67 @@
+package ca.andrewmccallum.novapacificisland.booking.data;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.stream.Collectors;
+import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingDataGeneratorTest {
+
+    private static final LocalDate DATE_FROM = LocalDate.of(2021, 1, 1);
+    private static final int COUNT = 2_000;
+
+    @Test
+    void generate_success_whenSameSeed() {
+
+        var first = new BookingDataGenerator(1).generate(DATE_FROM, COUNT).collect(Collectors.toList());
+        var second = new BookingDataGenerator(1).generate(DATE_FROM, COUNT).collect(Collectors.toList());
+        var other = new BookingDataGenerator(2).generate(DATE_FROM, COUNT).collect(Collectors.toList());
+
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+    }
+
+    @Test
+    void generate_success_staysInOrderWithoutSharingNights() {
+
+        var bookings = new BookingDataGenerator(1).generate(DATE_FROM, COUNT).collect(Collectors.toList());
+
+        assertEquals(COUNT, bookings.size());
+        var previousCheckout = DATE_FROM;
+        for (Booking booking : bookings) {
+            assertFalse(booking.getCheckinDate().isBefore(previousCheckout));
+            var nights = ChronoUnit.DAYS.between(booking.getCheckinDate(), booking.getCheckoutDate());
+            assertTrue(nights >= 1 && nights <= BookingDataGenerator.MAX_NIGHTS);
+            previousCheckout = booking.getCheckoutDate();
+        }
+    }
+
+    @Test
+    void generate_success_denserInPeakSeason() {
+
+        var bookings = new BookingDataGenerator(1).generate(DATE_FROM, COUNT).collect(Collectors.toList());
+
+        var peakNights = new long[2];
+        bookings.forEach(b -> b.getCheckinDate().datesUntil(b.getCheckoutDate())
+                .forEach(d -> peakNights[BookingDataGenerator.isPeakSeason(d) ? 1 : 0]++));
+
+        var lastNight = bookings.get(bookings.size() - 1).getCheckoutDate();
+        var peakDays = DATE_FROM.datesUntil(lastNight).filter(BookingDataGenerator::isPeakSeason).count();
+        var offPeakDays = DATE_FROM.until(lastNight, ChronoUnit.DAYS) - peakDays;
+
+        assertTrue((double) peakNights[1] / peakDays > (double) peakNights[0] / offPeakDays);
+    }
+
+    @Test
+    void isPeakSeason_success() {
+
+        assertTrue(BookingDataGenerator.isPeakSeason(LocalDate.of(2021, 7, 15)));
+        assertTrue(BookingDataGenerator.isPeakSeason(LocalDate.of(2021, 12, 24)));
+        assertTrue(BookingDataGenerator.isPeakSeason(LocalDate.of(2022, 1, 2)));
+        assertFalse(BookingDataGenerator.isPeakSeason(LocalDate.of(2021, 10, 15)));
+        assertFalse(BookingDataGenerator.isPeakSeason(LocalDate.of(2022, 1, 4)));
+    }
+}
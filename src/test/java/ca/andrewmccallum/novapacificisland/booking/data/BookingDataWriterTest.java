@@ -0,0 +1,42 @@
+package ca.andrewmccallum.novapacificisland.booking.data;
+
+import java.time.LocalDate;
+import ca.andrewmccallum.novapacificisland.booking.repository.BookingNightRepository;
+import ca.andrewmccallum.novapacificisland.booking.repository.BookingRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class BookingDataWriterTest {
+
+    private static final LocalDate DATE_FROM = LocalDate.of(2021, 7, 26);
+    private static final int COUNT = 2_500;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private BookingRepository bookingRepository;
+    @Autowired
+    private BookingNightRepository bookingNightRepository;
+
+    @Test
+    void insert_success_readableThroughRepositories() {
+
+        var bookings = SyntheticBookings.seed(jdbcTemplate, DATE_FROM, COUNT);
+
+        assertEquals(COUNT, bookingRepository.count());
+        var first = bookings.get(0);
+        assertEquals(first, bookingRepository.findById(first.getId()).orElseThrow());
+
+        var last = bookings.get(COUNT - 1);
+        var nights = bookings.stream()
+                .mapToLong(b -> b.getCheckinDate().until(b.getCheckoutDate()).getDays())
+                .sum();
+        assertEquals(nights, bookingNightRepository.count());
+        assertEquals(nights, bookingNightRepository.findOccupiedNights(DATE_FROM, last.getCheckoutDate()).size());
+    }
+}
@@ -0,0 +1,30 @@
+package ca.andrewmccallum.novapacificisland.booking.data;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Test fixture seeding the database with synthetic bookings.
+ */
+public final class SyntheticBookings {
+
+    public static final long SEED = 42;
+
+    private SyntheticBookings() {
+    }
+
+    /**
+     * Generate bookings from the given date and insert them, along with their nights.
+     * @return the bookings inserted
+     */
+    public static List<Booking> seed(JdbcTemplate jdbcTemplate, LocalDate from, int count) {
+
+        var bookings = new BookingDataGenerator(SEED).generate(from, count).collect(Collectors.toList());
+        new BookingDataWriter(jdbcTemplate).insert(bookings.stream());
+
+        return bookings;
+    }
+}
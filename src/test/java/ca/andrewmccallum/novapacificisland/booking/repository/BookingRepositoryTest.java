@@ -0,0 +1,59 @@
+package ca.andrewmccallum.novapacificisland.booking.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import ca.andrewmccallum.novapacificisland.booking.model.BookingDates;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class BookingRepositoryTest {
+
+    private static final LocalDate DATE = LocalDate.of(2021, 7, 29);
+
+    @Autowired
+    private BookingRepository bookingRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+
+        bookingRepository.saveAll(List.of(
+                booking(DATE.minusDays(3), DATE),               // checks out on the date
+                booking(DATE.minusDays(1), DATE.plusDays(2)),   // stays over the date
+                booking(DATE, DATE.plusDays(1))                 // checks in on the date
+        ));
+    }
+
+    @Test
+    void findBookingDatesByCheckoutDateAfter_success() {
+
+        var checkinDates = bookingRepository.findBookingDatesByCheckoutDateAfter(DATE).stream()
+                .map(BookingDates::getCheckinDate)
+                .sorted()
+                .collect(Collectors.toList());
+
+        assertEquals(List.of(DATE.minusDays(1), DATE), checkinDates);
+    }
+
+    @Test
+    void findBookingDatesByCheckoutDateAfter_scansCheckoutIndex() {
+
+        var plan = jdbcTemplate.queryForObject(
+                "explain select checkin_date, checkout_date from booking where checkout_date > ?", String.class, DATE);
+
+        assertTrue(plan.toUpperCase().contains("IDX_BOOKING_CHECKOUT_DATES"), plan);
+    }
+
+    private static Booking booking(LocalDate checkinDate, LocalDate checkoutDate) {
+        return new Booking(null, checkinDate, checkoutDate, "email@booking.test", "Booking User");
+    }
+}
@@ -0,0 +1,104 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AvailabilityCacheTest {
+
+    private static final Instant INSTANT_TODAY = Instant.ofEpochSecond(1627300556L);
+    private static final LocalDate DATE_TODAY = LocalDate.of(2021, 7, 26);
+    private static final LocalDate DATE_NEXT_MONTH = DATE_TODAY.plusMonths(1);
+
+    private final Clock clock = mock(Clock.class);
+    private final AvailabilityCache availabilityCache = new AvailabilityCache(clock);
+    private final AtomicInteger computed = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+    }
+
+    @Test
+    void get_success_withoutCaching_whenWindowTooLong() {
+
+        var to = DATE_TODAY.plusDays(AvailabilityCache.MAX_WINDOW_NIGHTS + 1);
+        availabilityCache.get(DATE_TODAY, to, this::compute);
+        availabilityCache.get(DATE_TODAY, to, this::compute);
+
+        assertEquals(2, computed.get());
+        assertEquals(0, availabilityCache.size());
+
+        // the longest cached window still is
+        availabilityCache.get(DATE_TODAY, to.minusDays(1), this::compute);
+        assertEquals(1, availabilityCache.size());
+    }
+
+    @Test
+    void get_success_computesOnce() {
+
+        var first = availabilityCache.get(DATE_TODAY, DATE_NEXT_MONTH, this::compute);
+        var second = availabilityCache.get(DATE_TODAY, DATE_NEXT_MONTH, this::compute);
+
+        assertSame(first, second);
+        assertEquals(1, computed.get());
+        assertEquals(1, availabilityCache.hits());
+        assertEquals(1, availabilityCache.misses());
+        assertThrows(UnsupportedOperationException.class, () -> first.remove(0));
+    }
+
+    @Test
+    void invalidate_success_onlyOverlappingWindows() {
+
+        availabilityCache.get(DATE_TODAY, DATE_TODAY.plusDays(10), this::compute);
+        availabilityCache.get(DATE_TODAY.plusDays(10), DATE_TODAY.plusDays(20), this::compute);
+
+        availabilityCache.invalidate(DATE_TODAY.plusDays(9), DATE_TODAY.plusDays(10));
+        assertEquals(1, availabilityCache.size());
+
+        availabilityCache.get(DATE_TODAY.plusDays(10), DATE_TODAY.plusDays(20), this::compute);
+        availabilityCache.get(DATE_TODAY, DATE_TODAY.plusDays(10), this::compute);
+        assertEquals(3, computed.get());
+    }
+
+    @Test
+    void get_doesNotCache_whenInvalidatedWhileComputing() {
+
+        availabilityCache.get(DATE_TODAY, DATE_NEXT_MONTH, () -> {
+            // a booking committed after the lookup read the index
+            availabilityCache.invalidate(DATE_TODAY.plusDays(1), DATE_TODAY.plusDays(2));
+            return compute();
+        });
+
+        assertEquals(0, availabilityCache.size());
+    }
+
+    @Test
+    void get_evictsAll_whenDayRollsOver() {
+
+        availabilityCache.get(DATE_TODAY, DATE_NEXT_MONTH, this::compute);
+        availabilityCache.get(DATE_TODAY.plusDays(1), DATE_NEXT_MONTH, this::compute);
+
+        when(clock.instant()).thenReturn(INSTANT_TODAY.plusSeconds(86_400));
+        availabilityCache.get(DATE_TODAY.plusDays(1), DATE_NEXT_MONTH, this::compute);
+
+        assertEquals(1, availabilityCache.size());
+        assertEquals(3, computed.get());
+    }
+
+    private List<LocalDate> compute() {
+        computed.incrementAndGet();
+        return new ArrayList<>(List.of(DATE_TODAY));
+    }
+}
@@ -1,20 +1,28 @@
 package ca.andrewmccallum.novapacificisland.booking.service;
 
+import java.time.Clock;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import ca.andrewmccallum.novapacificisland.booking.dto.BookingDTO;
 import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import ca.andrewmccallum.novapacificisland.booking.repository.BookingNightRepository;
 import ca.andrewmccallum.novapacificisland.booking.repository.BookingRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -25,6 +33,14 @@ class BookingServiceITest {
     private BookingService bookingService;
     @Autowired
     private BookingRepository bookingRepository;
+    @Autowired
+    private BookingNightRepository bookingNightRepository;
+    @Autowired
+    private Clock clock;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
 
     private final ExecutorService executorService = Executors.newFixedThreadPool(5);
 
@@ -53,6 +69,95 @@ class BookingServiceITest {
         assertEquals(1, bookingRepository.count());
     }
 
+    @Test
+    void createBooking_onlyOneBookingForDate_acrossInstances() {
+
+        // a second instance sharing the database, unaware of the first's bookings
+        var otherInstance = new BookingService(bookingRepository, bookingNightRepository, clock, transactionManager,
+                meterRegistry);
+
+        var checkinDate = LocalDate.now(clock).plusDays(2);
+        var bookingId = bookingService.createBooking(new BookingDTO(checkinDate, checkinDate.plusDays(2), "a@a.com", "a a"));
+        try {
+            var bookingDto = new BookingDTO(checkinDate.plusDays(1), checkinDate.plusDays(3), "b@b.com", "b b");
+            IllegalArgumentException exception =
+                    assertThrows(IllegalArgumentException.class, () -> otherInstance.createBooking(bookingDto));
+            assertEquals("The date(s) requested are no longer available.", exception.getMessage());
+        } finally {
+            bookingService.cancelBooking(bookingId);
+        }
+
+        assertTrue(bookingNightRepository.findOccupiedNights(checkinDate, checkinDate.plusDays(3)).isEmpty());
+    }
+
+    @Test
+    void updateBooking_movesNights_whenOverlappingOwnStay() {
+
+        var checkinDate = LocalDate.now(clock).plusDays(5);
+        var bookingId = bookingService.createBooking(new BookingDTO(checkinDate, checkinDate.plusDays(2), "a@a.com", "a a"));
+        try {
+            bookingService.updateBooking(bookingId, new BookingDTO(checkinDate.plusDays(1), checkinDate.plusDays(3), null, null));
+
+            assertEquals(List.of(checkinDate.plusDays(1), checkinDate.plusDays(2)),
+                    bookingNightRepository.findOccupiedNights(checkinDate, checkinDate.plusDays(3)));
+        } finally {
+            bookingService.cancelBooking(bookingId);
+        }
+    }
+
+    @Test
+    void updateBooking_fails_whenExpectedVersionStale() {
+
+        var checkinDate = LocalDate.now(clock).plusDays(8);
+        var bookingId = bookingService.createBooking(new BookingDTO(checkinDate, checkinDate.plusDays(1), "a@a.com", "a a"));
+        try {
+            var version = bookingService.getVersionedBooking(bookingId).getVersion();
+            var updated = bookingService.updateBooking(bookingId, new BookingDTO(null, null, null, "b b"), version);
+            assertEquals(version + 1, updated.getVersion());
+
+            var staleUpdate = new BookingDTO(null, null, null, "c c");
+            assertThrows(VersionMismatchException.class, () -> bookingService.updateBooking(bookingId, staleUpdate, version));
+            assertEquals("b b", bookingService.getBooking(bookingId).getFullName());
+        } finally {
+            bookingService.cancelBooking(bookingId);
+        }
+    }
+
+    @Test
+    void createBookingAsync_onlyOneBookingForDate_whenPipelined() throws InterruptedException {
+
+        var pipelined = new BookingService(bookingRepository, bookingNightRepository, clock, transactionManager,
+                meterRegistry);
+        ReflectionTestUtils.setField(pipelined, "pipelineEnabled", true);
+        ReflectionTestUtils.setField(pipelined, "pipelineCapacity", 16);
+        ReflectionTestUtils.setField(pipelined, "pipelineMaxBatch", 4);
+        pipelined.start();
+
+        var checkinDate = LocalDate.now(clock).plusDays(11);
+        var futures = IntStream.range(0, 5)
+                .mapToObj(i -> pipelined.createBookingAsync(
+                        new BookingDTO(checkinDate, checkinDate.plusDays(1), i + "@a.com", "a a")))
+                .collect(Collectors.toList());
+        var otherFuture = pipelined.createBookingAsync(
+                new BookingDTO(checkinDate.plusDays(1), checkinDate.plusDays(2), "b@b.com", "b b"));
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+        var bookingIds = futures.stream()
+                .filter(f -> !f.isCompletedExceptionally())
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+        var otherBookingId = otherFuture.join();
+        try {
+            assertEquals(1, bookingIds.size());
+            assertEquals(List.of(checkinDate, checkinDate.plusDays(1)),
+                    bookingNightRepository.findOccupiedNights(checkinDate, checkinDate.plusDays(2)));
+        } finally {
+            bookingIds.forEach(pipelined::cancelBooking);
+            pipelined.cancelBooking(otherBookingId);
+            pipelined.stop();
+        }
+    }
+
     private Callable<String> attemptBooking(long userNumber) {
 
         return () -> {
@@ -1,28 +1,42 @@
 package ca.andrewmccallum.novapacificisland.booking.service;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityChangeDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityWindowDTO;
 import ca.andrewmccallum.novapacificisland.booking.dto.BookingDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.StayDTO;
 import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import ca.andrewmccallum.novapacificisland.booking.model.BookingDates;
+import ca.andrewmccallum.novapacificisland.booking.repository.BookingNightRepository;
 import ca.andrewmccallum.novapacificisland.booking.repository.BookingRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.notNull;
-import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -42,7 +56,13 @@ class BookingServiceTest {
     @Mock
     private BookingRepository bookingRepository;
     @Mock
+    private BookingNightRepository bookingNightRepository;
+    @Mock
     private Clock clock;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     @InjectMocks
     private BookingService bookingService;
@@ -52,8 +72,6 @@ class BookingServiceTest {
 
         when(clock.getZone()).thenReturn(ZoneOffset.UTC);
         when(clock.instant()).thenReturn(INSTANT_TODAY);
-        when(bookingRepository.findBookingsByCheckinDateBetween(DATE_TODAY, TO_DATE))
-                .thenReturn(List.of());
 
         var availableDates = bookingService.findAvailability(DATE_TODAY, TO_DATE);
         assertEquals(3, availableDates.size());
@@ -62,14 +80,69 @@ class BookingServiceTest {
         assertEquals(LocalDate.of(2021, 7, 28), availableDates.get(2));
     }
 
+    @Test
+    void findAvailability_success_whenNightsOccupied() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY)).thenReturn(List.of(datesOf(booking)));
+        bookingService.loadOccupancy();
+
+        var availableDates = bookingService.findAvailability(DATE_TODAY, null);
+        assertEquals(29, availableDates.size());
+        assertEquals(DATE_TODAY, availableDates.get(0));
+        assertEquals(TO_DATE, availableDates.get(1));
+        // only loaded once, reads are answered from the index
+        verify(bookingRepository, times(1)).findBookingDatesByCheckoutDateAfter(any());
+    }
+
+    @Test
+    void findAvailability_success_forManyWindows() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY)).thenReturn(List.of(datesOf(booking)));
+        bookingService.loadOccupancy();
+
+        var availability = bookingService.findAvailability(List.of(
+                new AvailabilityWindowDTO(DATE_TODAY, TO_DATE.plusDays(1)),
+                new AvailabilityWindowDTO(TO_DATE, null)));
+
+        assertEquals(List.of(DATE_TODAY, TO_DATE), availability.get(0));
+        assertEquals(bookingService.findAvailability(TO_DATE, null), availability.get(1));
+    }
+
+    @Test
+    void findAvailability_fails_whenAnyWindowInvalid() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+
+        var windows = List.of(
+                new AvailabilityWindowDTO(DATE_TODAY, TO_DATE),
+                new AvailabilityWindowDTO(DATE_TODAY.minusDays(1), TO_DATE));
+        IllegalArgumentException exception =
+                assertThrows(IllegalArgumentException.class, () -> bookingService.findAvailability(windows));
+
+        assertEquals("The `from` date must not be in the past.", exception.getMessage());
+    }
+
+    @Test
+    void findAvailability_fails_whenNoWindows() {
+
+        IllegalArgumentException exception =
+                assertThrows(IllegalArgumentException.class, () -> bookingService.findAvailability(List.of()));
+
+        assertEquals("Between 1 and 50 date ranges must be requested.", exception.getMessage());
+    }
+
     @Test
     void findAvailability_success_whenNoEndDate() {
 
         when(clock.getZone()).thenReturn(ZoneOffset.UTC);
         when(clock.instant()).thenReturn(INSTANT_TODAY);
-        var dateInAMonth = DATE_TODAY.plusMonths(1);
-        when(bookingRepository.findBookingsByCheckinDateBetween(DATE_TODAY, dateInAMonth))
-                .thenReturn(List.of());
 
         var availableDates = bookingService.findAvailability(DATE_TODAY, null);
         assertEquals(31, availableDates.size());
@@ -77,6 +150,107 @@ class BookingServiceTest {
         assertEquals(LocalDate.of(2021, 8, 25), availableDates.get(30));
     }
 
+    @Test
+    void findAvailability_success_whenCachedWindowChanges() {
+
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.save(notNull())).thenReturn(booking);
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking));
+        when(bookingRepository.deleteByIdAndVersion(ID, null)).thenReturn(1);
+
+        assertEquals(3, bookingService.findAvailability(DATE_TODAY, TO_DATE).size());
+
+        bookingService.createBooking(new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME));
+        assertEquals(List.of(DATE_TODAY), bookingService.findAvailability(DATE_TODAY, TO_DATE));
+
+        bookingService.cancelBooking(ID);
+        assertEquals(3, bookingService.findAvailability(DATE_TODAY, TO_DATE).size());
+    }
+
+    @Test
+    void getOccupancyVersion_increases_whenOccupancyChanges() {
+
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.save(notNull())).thenReturn(booking);
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking));
+        when(bookingRepository.deleteByIdAndVersion(ID, null)).thenReturn(1);
+
+        long initial = bookingService.getOccupancyVersion().orElseThrow();
+        assertEquals(initial, bookingService.getOccupancyVersion().orElseThrow());
+
+        bookingService.createBooking(new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME));
+        long created = bookingService.getOccupancyVersion().orElseThrow();
+        assertTrue(created > initial);
+
+        bookingService.cancelBooking(ID);
+        long cancelled = bookingService.getOccupancyVersion().orElseThrow();
+        assertTrue(cancelled > created);
+
+        when(clock.instant()).thenReturn(INSTANT_TODAY.plusSeconds(86_400));
+        assertTrue(bookingService.getOccupancyVersion().orElseThrow() > cancelled);
+    }
+
+    @Test
+    void findAvailabilityRanges_success_whenNightsOccupied() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY)).thenReturn(List.of(datesOf(booking)));
+        bookingService.loadOccupancy();
+
+        var ranges = bookingService.findAvailabilityRanges(DATE_TODAY, null);
+        assertEquals(DATE_TODAY.plusMonths(1), ranges.getTo());
+        assertEquals(List.of(List.of(DATE_TODAY, DATE_TOMORROW), List.of(TO_DATE, ranges.getTo())), ranges.getFree());
+    }
+
+    @Test
+    void findAvailabilityBitmap_success_whenNightsOccupied() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY)).thenReturn(List.of(datesOf(booking)));
+        bookingService.loadOccupancy();
+
+        var bitmap = bookingService.findAvailabilityBitmap(DATE_TODAY, DATE_TODAY.plusDays(10));
+        // nights 0 and 3 to 9 free - 0b11111001, 0b00000011
+        assertArrayEquals(new byte[]{(byte) 0xF9, 0x03}, Base64.getDecoder().decode(bitmap.getFree()));
+    }
+
+    @Test
+    void findStayStarts_success_onlyBookableStarts() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        Booking booking = new Booking(ID, DATE_TOMORROW.plusDays(2), DATE_TOMORROW.plusDays(3), EMAIL, FULL_NAME);
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY)).thenReturn(List.of(datesOf(booking)));
+        bookingService.loadOccupancy();
+
+        // not today, too soon to book, nor the nights before the booking too close for three nights
+        var starts = bookingService.findStayStarts(DATE_TODAY, DATE_NEXT_MONTH, 3);
+        assertEquals(DATE_TOMORROW.plusDays(3), starts.get(0));
+        // nor more than a month ahead
+        assertEquals(DATE_TODAY.plusMonths(1), starts.get(starts.size() - 1));
+    }
+
+    @Test
+    void findStayStarts_fails_whenTooManyNights() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+
+        IllegalArgumentException exception =
+                assertThrows(IllegalArgumentException.class, () -> bookingService.findStayStarts(DATE_TODAY, null, 4));
+        assertEquals("Stay must be between 1 and 3 nights.", exception.getMessage());
+    }
+
     @Test
     void findAvailability_fails_whenEndAfterStart() {
 
@@ -106,7 +280,6 @@ class BookingServiceTest {
 
         when(clock.getZone()).thenReturn(ZoneOffset.UTC);
         when(clock.instant()).thenReturn(INSTANT_YESTERDAY);
-        when(bookingRepository.findBookingsByCheckinDateBetween(DATE_TODAY, TO_DATE)).thenReturn(List.of());
         when(bookingRepository.save(notNull())).thenReturn(booking);
 
         var bookingRequest = new BookingDTO(DATE_TODAY, TO_DATE, EMAIL, FULL_NAME);
@@ -114,6 +287,34 @@ class BookingServiceTest {
         assertEquals(ID, uuid);
     }
 
+    @Test
+    void tryCreateBooking_success() {
+
+        Booking booking = new Booking(ID, DATE_TODAY, TO_DATE, EMAIL, FULL_NAME);
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_YESTERDAY);
+        when(bookingRepository.save(notNull())).thenReturn(booking);
+
+        var created = bookingService.tryCreateBooking(new BookingDTO(DATE_TODAY, TO_DATE, EMAIL, FULL_NAME));
+        assertTrue(created.isValid());
+        assertEquals(ID, created.getValue());
+    }
+
+    @Test
+    void tryCreateBooking_rejected_withoutCreating_whenBookingSameDay() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+
+        var created = bookingService.tryCreateBooking(new BookingDTO(DATE_TODAY, TO_DATE, EMAIL, FULL_NAME));
+
+        assertFalse(created.isValid());
+        assertEquals("Bookings must be made at least one day in advance.", created.getRejection().getMessage());
+        assertEquals(1, meterRegistry.get(BookingMetrics.REJECTIONS).tag("reason", "too_soon").counter().count());
+        verify(bookingRepository, never()).save(any());
+    }
+
     @Test
     void createBooking_fails_whenDatesBookedAlready() {
 
@@ -121,7 +322,8 @@ class BookingServiceTest {
 
         when(clock.getZone()).thenReturn(ZoneOffset.UTC);
         when(clock.instant()).thenReturn(INSTANT_YESTERDAY);
-        when(bookingRepository.findBookingsByCheckinDateBetween(DATE_TODAY, TO_DATE)).thenReturn(List.of(booking));
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY.minusDays(1))).thenReturn(List.of(datesOf(booking)));
+        bookingService.loadOccupancy();
 
         var bookingRequest = new BookingDTO(DATE_TODAY, TO_DATE, EMAIL, FULL_NAME);
         IllegalArgumentException exception =
@@ -129,6 +331,353 @@ class BookingServiceTest {
         assertEquals("The date(s) requested are no longer available.", exception.getMessage());
     }
 
+    @Test
+    void createBooking_fails_withNearestAlternatives_whenDatesBookedAlready() {
+
+        Booking booking = new Booking(ID, DATE_TODAY.plusDays(3), DATE_TODAY.plusDays(5), EMAIL, FULL_NAME);
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY)).thenReturn(List.of(datesOf(booking)));
+        bookingService.loadOccupancy();
+
+        var bookingRequest = new BookingDTO(DATE_TODAY.plusDays(3), DATE_TODAY.plusDays(5), EMAIL, FULL_NAME);
+        DatesUnavailableException exception =
+                assertThrows(DatesUnavailableException.class, () -> bookingService.createBooking(bookingRequest));
+        assertEquals("The date(s) requested are no longer available.", exception.getMessage());
+        assertEquals(List.of(
+                new StayDTO(DATE_TODAY.plusDays(1), DATE_TODAY.plusDays(3)),
+                new StayDTO(DATE_TODAY.plusDays(5), DATE_TODAY.plusDays(7)),
+                new StayDTO(DATE_TODAY.plusDays(6), DATE_TODAY.plusDays(8))), exception.getAlternatives());
+    }
+
+    @Test
+    void createBooking_fails_withAlternativesAgreeingWithRejection_whenBookedElsewhere() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.save(notNull())).thenThrow(new DataIntegrityViolationException("booked elsewhere"));
+
+        // the index has the nights free, only the database knows otherwise
+        var bookingRequest = new BookingDTO(DATE_TODAY.plusDays(3), DATE_TODAY.plusDays(5), EMAIL, FULL_NAME);
+        DatesUnavailableException exception =
+                assertThrows(DatesUnavailableException.class, () -> bookingService.createBooking(bookingRequest));
+        assertEquals(List.of(
+                new StayDTO(DATE_TODAY.plusDays(1), DATE_TODAY.plusDays(3)),
+                new StayDTO(DATE_TODAY.plusDays(5), DATE_TODAY.plusDays(7)),
+                new StayDTO(DATE_TODAY.plusDays(6), DATE_TODAY.plusDays(8))), exception.getAlternatives());
+    }
+
+    @Test
+    void createBooking_success_occupiesNights() {
+
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.save(notNull())).thenReturn(booking);
+
+        bookingService.createBooking(new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME));
+
+        assertEquals(List.of(DATE_TODAY), bookingService.findAvailability(DATE_TODAY, TO_DATE));
+    }
+
+    @Test
+    void createBooking_fails_whenSaveFails_andReleasesNights() {
+
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.save(notNull()))
+                .thenThrow(new IllegalStateException("Database unavailable."))
+                .thenReturn(booking);
+
+        var bookingRequest = new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        assertThrows(IllegalStateException.class, () -> bookingService.createBooking(bookingRequest));
+        assertEquals(3, bookingService.findAvailability(DATE_TODAY, TO_DATE).size());
+
+        assertEquals(ID, bookingService.createBooking(bookingRequest));
+    }
+
+    @Test
+    void createBooking_fails_whenNightBookedElsewhere() {
+
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.save(notNull())).thenReturn(booking);
+        when(bookingNightRepository.saveAll(any())).thenThrow(new DataIntegrityViolationException("uk_booking_night_night"));
+
+        var bookingRequest = new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        IllegalArgumentException exception =
+                assertThrows(IllegalArgumentException.class, () -> bookingService.createBooking(bookingRequest));
+        assertEquals("The date(s) requested are no longer available.", exception.getMessage());
+        assertEquals(3, bookingService.findAvailability(DATE_TODAY, TO_DATE).size());
+        assertEquals(1, meterRegistry.get(BookingMetrics.REJECTIONS).tag("reason", "nights_booked_elsewhere").counter().count());
+    }
+
+    @Test
+    void createBooking_success_recordsMetrics() {
+
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.save(notNull())).thenReturn(booking);
+
+        bookingService.createBooking(new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME));
+
+        assertEquals(1, meterRegistry.get(BookingMetrics.SERVICE_TIMER)
+                .tags("method", "createBooking", "exception", "none").timer().count());
+        assertEquals(1, meterRegistry.get(BookingMetrics.PERSIST_TIMER).timer().count());
+        assertEquals(1, meterRegistry.get(BookingMetrics.CLAIM_TIMER).timer().count());
+        assertEquals(0, meterRegistry.get(BookingMetrics.CLAIMED_GAUGE).gauge().value());
+    }
+
+    @Test
+    void createBooking_fails_andCountsRejectionReason() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+
+        var booking = new BookingDTO(DATE_TODAY, TO_DATE, EMAIL, FULL_NAME);
+        assertThrows(IllegalArgumentException.class, () -> bookingService.createBooking(booking));
+        assertThrows(IllegalArgumentException.class, () -> bookingService.createBooking(booking));
+
+        assertEquals(2, meterRegistry.get(BookingMetrics.REJECTIONS).tag("reason", "too_soon").counter().count());
+        assertEquals(2, meterRegistry.get(BookingMetrics.SERVICE_TIMER)
+                .tags("method", "createBooking", "exception", "IllegalArgumentException").timer().count());
+    }
+
+    @Test
+    void validateBooking_success() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+
+        var booking = new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        var validation = bookingService.validateBooking(booking);
+
+        assertTrue(validation.isValid());
+        assertEquals(booking, validation.getValue());
+    }
+
+    @Test
+    void validateBooking_rejected_andCountsReason_whenBookingSameDay() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+
+        var validation = bookingService.validateBooking(new BookingDTO(DATE_TODAY, TO_DATE, EMAIL, FULL_NAME));
+
+        assertFalse(validation.isValid());
+        assertEquals(Rejection.Kind.INVALID, validation.getRejection().getKind());
+        assertEquals("Bookings must be made at least one day in advance.", validation.getRejection().getMessage());
+        assertEquals(1, meterRegistry.get(BookingMetrics.REJECTIONS).tag("reason", "too_soon").counter().count());
+    }
+
+    @Test
+    void validateBooking_rejected_withNearestAlternatives_whenDatesBookedAlready() {
+
+        Booking booking = new Booking(ID, DATE_TODAY.plusDays(3), DATE_TODAY.plusDays(5), EMAIL, FULL_NAME);
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY)).thenReturn(List.of(datesOf(booking)));
+        bookingService.loadOccupancy();
+
+        var validation = bookingService.validateBooking(
+                new BookingDTO(DATE_TODAY.plusDays(3), DATE_TODAY.plusDays(5), EMAIL, FULL_NAME));
+
+        assertFalse(validation.isValid());
+        assertEquals(Rejection.Kind.DATES_UNAVAILABLE, validation.getRejection().getKind());
+        assertEquals("The date(s) requested are no longer available.", validation.getRejection().getMessage());
+        assertEquals(List.of(
+                new StayDTO(DATE_TODAY.plusDays(1), DATE_TODAY.plusDays(3)),
+                new StayDTO(DATE_TODAY.plusDays(5), DATE_TODAY.plusDays(7)),
+                new StayDTO(DATE_TODAY.plusDays(6), DATE_TODAY.plusDays(8))), validation.getRejection().getAlternatives());
+        assertEquals(1, meterRegistry.get(BookingMetrics.REJECTIONS).tag("reason", "nights_booked").counter().count());
+        verify(bookingRepository, never()).save(any());
+    }
+
+    @Test
+    void findVersionedBooking_rejected_whenNotFound() {
+
+        when(bookingRepository.findById(ID)).thenReturn(Optional.empty());
+
+        var validation = bookingService.findVersionedBooking(ID);
+
+        assertFalse(validation.isValid());
+        assertEquals(Rejection.Kind.NOT_FOUND, validation.getRejection().getKind());
+        assertEquals("Cannot find booking with specified ID.", validation.getRejection().getMessage());
+    }
+
+    @Test
+    void holdBooking_success_keepsNightsFromOthers() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+
+        var bookingRequest = new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        var hold = bookingService.holdBooking(bookingRequest);
+        assertEquals(INSTANT_TODAY, hold.getExpiresAt());
+
+        assertThrows(DatesUnavailableException.class, () -> bookingService.createBooking(bookingRequest));
+        assertThrows(DatesUnavailableException.class, () -> bookingService.holdBooking(bookingRequest));
+        verify(bookingRepository, never()).save(any());
+    }
+
+    @Test
+    void holdBooking_success_heldNightsNotSuggested() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+
+        var bookingRequest = new BookingDTO(TO_DATE, TO_DATE.plusDays(2), EMAIL, FULL_NAME);
+        bookingService.holdBooking(bookingRequest);
+
+        // neither as a stay start nor as an alternative, though the index has no booking for them
+        var starts = bookingService.findStayStarts(DATE_TODAY, TO_DATE.plusDays(3), 2);
+        assertEquals(List.of(DATE_TOMORROW, TO_DATE.plusDays(2)), starts);
+
+        DatesUnavailableException exception =
+                assertThrows(DatesUnavailableException.class, () -> bookingService.createBooking(bookingRequest));
+        assertFalse(exception.getAlternatives().isEmpty());
+        assertTrue(exception.getAlternatives().stream()
+                .allMatch(stay -> !stay.getCheckinDate().isBefore(TO_DATE.plusDays(2))
+                        || !stay.getCheckoutDate().isAfter(TO_DATE)));
+    }
+
+    @Test
+    void holdBooking_success_heldNightsUnavailable() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        assertEquals(3, bookingService.findAvailability(DATE_TODAY, TO_DATE).size());
+        long version = bookingService.getOccupancyVersion().orElseThrow();
+
+        var changes = new ArrayList<AvailabilityChangeDTO>();
+        bookingService.addOccupancyListener(changes::addAll);
+        bookingService.holdBooking(new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME));
+
+        // every read shows the held nights as it would booked ones, the cached window included
+        assertEquals(List.of(DATE_TODAY), bookingService.findAvailability(DATE_TODAY, TO_DATE));
+        assertEquals(List.of(List.of(DATE_TODAY)),
+                bookingService.findAvailability(List.of(new AvailabilityWindowDTO(DATE_TODAY, TO_DATE))));
+        assertEquals(List.of(List.of(DATE_TODAY, DATE_TOMORROW)),
+                bookingService.findAvailabilityRanges(DATE_TODAY, TO_DATE).getFree());
+        assertArrayEquals(new byte[]{0x01}, Base64.getDecoder().decode(
+                bookingService.findAvailabilityBitmap(DATE_TODAY, TO_DATE).getFree()));
+
+        long held = bookingService.getOccupancyVersion().orElseThrow();
+        assertTrue(held > version);
+        assertEquals(List.of(new AvailabilityChangeDTO(DATE_TOMORROW, true, held),
+                new AvailabilityChangeDTO(DATE_TOMORROW.plusDays(1), true, held)), changes);
+    }
+
+    @Test
+    void confirmHold_success() {
+
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.save(notNull())).thenReturn(booking);
+
+        var hold = bookingService.holdBooking(new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME));
+
+        assertEquals(ID, bookingService.confirmHold(hold.getHoldId()));
+        assertEquals(List.of(DATE_TODAY), bookingService.findAvailability(DATE_TODAY, TO_DATE));
+        assertThrows(NoSuchElementException.class, () -> bookingService.confirmHold(hold.getHoldId()));
+    }
+
+    @Test
+    void releaseHold_success_freesNights() {
+
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.save(notNull())).thenReturn(booking);
+
+        var bookingRequest = new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        var hold = bookingService.holdBooking(bookingRequest);
+        bookingService.releaseHold(hold.getHoldId());
+
+        assertEquals(ID, bookingService.createBooking(bookingRequest));
+        assertThrows(NoSuchElementException.class, () -> bookingService.releaseHold(hold.getHoldId()));
+    }
+
+    @Test
+    void addOccupancyListener_success_changesInVersionOrder_whenWrittenConcurrently() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+
+        var versions = new ArrayList<Long>();
+        bookingService.addOccupancyListener(changes -> versions.add(changes.get(0).getVersion()));
+
+        // each writer holds and releases nights of its own, so none are turned away
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var writers = new ArrayList<CompletableFuture<Void>>();
+            for (int writer = 0; writer < 8; writer++) {
+                var checkinDate = DATE_TOMORROW.plusDays(writer * 2L);
+                writers.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        var hold = bookingService.holdBooking(
+                                new BookingDTO(checkinDate, checkinDate.plusDays(2), EMAIL, FULL_NAME));
+                        bookingService.releaseHold(hold.getHoldId());
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(writers.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(8 * 200 * 2, versions.size());
+        for (int i = 1; i < versions.size(); i++) {
+            assertTrue(versions.get(i) > versions.get(i - 1));
+        }
+    }
+
+    @Test
+    void releaseHold_success_heldNightsAvailable() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        var hold = bookingService.holdBooking(new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME));
+        assertEquals(List.of(DATE_TODAY), bookingService.findAvailability(DATE_TODAY, TO_DATE));
+        long held = bookingService.getOccupancyVersion().orElseThrow();
+
+        var changes = new ArrayList<AvailabilityChangeDTO>();
+        bookingService.addOccupancyListener(changes::addAll);
+        bookingService.releaseHold(hold.getHoldId());
+
+        assertEquals(3, bookingService.findAvailability(DATE_TODAY, TO_DATE).size());
+        long released = bookingService.getOccupancyVersion().orElseThrow();
+        assertTrue(released > held);
+        assertEquals(List.of(new AvailabilityChangeDTO(DATE_TOMORROW, false, released),
+                new AvailabilityChangeDTO(DATE_TOMORROW.plusDays(1), false, released)), changes);
+    }
+
+    @Test
+    void confirmHold_fails_heldNightsAvailable_whenWriteFails() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        when(bookingRepository.save(notNull())).thenThrow(new DataIntegrityViolationException("booked elsewhere"));
+
+        var hold = bookingService.holdBooking(new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME));
+        assertEquals(List.of(DATE_TODAY), bookingService.findAvailability(DATE_TODAY, TO_DATE));
+
+        assertThrows(DatesUnavailableException.class, () -> bookingService.confirmHold(hold.getHoldId()));
+        assertEquals(3, bookingService.findAvailability(DATE_TODAY, TO_DATE).size());
+    }
+
     @Test
     void createBooking_fails_whenCheckinBeforeCheckout() {
 
@@ -210,13 +759,128 @@ class BookingServiceTest {
     @Test
     void cancelBooking_success() {
 
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        booking.setVersion(1L);
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking));
+        when(bookingRepository.deleteByIdAndVersion(ID, 1L)).thenReturn(1);
+
         assertDoesNotThrow(() -> bookingService.cancelBooking(ID));
+        verify(bookingRepository).deleteByIdAndVersion(ID, 1L);
+    }
+
+    @Test
+    void cancelBooking_success_releasesNights() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        booking.setVersion(1L);
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY)).thenReturn(List.of(datesOf(booking)));
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking));
+        when(bookingRepository.deleteByIdAndVersion(ID, 1L)).thenReturn(1);
+        bookingService.loadOccupancy();
+
+        bookingService.cancelBooking(ID);
+
+        assertEquals(3, bookingService.findAvailability(DATE_TODAY, TO_DATE).size());
+    }
+
+    @Test
+    void cancelBooking_success_promotesEarliestWaitlisted() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        booking.setVersion(1L);
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY)).thenReturn(List.of(datesOf(booking)));
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking));
+        when(bookingRepository.deleteByIdAndVersion(ID, 1L)).thenReturn(1);
+        bookingService.loadOccupancy();
+
+        var first = bookingService.joinWaitlist(new BookingDTO(DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME));
+        var second = bookingService.joinWaitlist(new BookingDTO(DATE_TOMORROW, TO_DATE.minusDays(1), EMAIL, FULL_NAME));
+        bookingService.promoteWaitlisted(DATE_TODAY, DATE_TODAY).join();
+        assertNull(bookingService.getWaitlisted(first.getWaitlistId()).getHold());
+
+        bookingService.cancelBooking(ID);
+        // promotions run in order, so once this one has, so has the cancellation's
+        bookingService.promoteWaitlisted(DATE_TODAY, DATE_TODAY).join();
+
+        var firstHold = bookingService.getWaitlisted(first.getWaitlistId()).getHold();
+        assertNotNull(firstHold);
+        assertNull(bookingService.getWaitlisted(second.getWaitlistId()).getHold());
+
+        // the next to wait gets the nights once the hold ends
+        bookingService.releaseHold(firstHold.getHoldId());
+        bookingService.promoteWaitlisted(DATE_TODAY, DATE_TODAY).join();
+
+        assertThrows(NoSuchElementException.class, () -> bookingService.getWaitlisted(first.getWaitlistId()));
+        assertNotNull(bookingService.getWaitlisted(second.getWaitlistId()).getHold());
+    }
+
+    @Test
+    void expireWaitlisted_success_removesStaysTooLateToBook() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY)).thenReturn(List.of(datesOf(booking)));
+        bookingService.loadOccupancy();
+
+        var tomorrow = bookingService.joinWaitlist(new BookingDTO(DATE_TOMORROW, DATE_TOMORROW.plusDays(1), EMAIL, FULL_NAME));
+        var later = bookingService.joinWaitlist(new BookingDTO(DATE_TOMORROW.plusDays(1), TO_DATE, EMAIL, FULL_NAME));
+        bookingService.promoteWaitlisted(DATE_TODAY, DATE_TODAY).join();
+
+        bookingService.expireWaitlisted();
+        assertNull(bookingService.getWaitlisted(tomorrow.getWaitlistId()).getHold());
+
+        // a day on, the first stay checks in today
+        when(clock.instant()).thenReturn(INSTANT_TODAY.plus(Duration.ofDays(1)));
+        bookingService.expireWaitlisted();
+
+        assertThrows(NoSuchElementException.class, () -> bookingService.getWaitlisted(tomorrow.getWaitlistId()));
+        assertNull(bookingService.getWaitlisted(later.getWaitlistId()).getHold());
+    }
+
+    @Test
+    void cancelBooking_success_releasesNightsAsMoved_whenUpdatedConcurrently() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_TODAY);
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        booking.setVersion(1L);
+        Booking moved = new Booking(ID, DATE_TODAY, DATE_TOMORROW, EMAIL, FULL_NAME);
+        moved.setVersion(2L);
+        when(bookingRepository.findBookingDatesByCheckoutDateAfter(DATE_TODAY)).thenReturn(List.of(datesOf(moved)));
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking), Optional.of(moved));
+        when(bookingRepository.deleteByIdAndVersion(ID, 1L)).thenReturn(0);
+        when(bookingRepository.deleteByIdAndVersion(ID, 2L)).thenReturn(1);
+        bookingService.loadOccupancy();
+
+        bookingService.cancelBooking(ID);
+
+        // the night it moved to is free again, where the nights it was read at would have been released instead
+        assertEquals(3, bookingService.findAvailability(DATE_TODAY, TO_DATE).size());
+        verify(bookingRepository).deleteByIdAndVersion(ID, 2L);
     }
 
     @Test
     void cancelBooking_fails_whenNotFound() {
 
-        doThrow(new EmptyResultDataAccessException(1)).when(bookingRepository).deleteById(ID);
+        when(bookingRepository.findById(ID)).thenReturn(Optional.empty());
+
+        NoSuchElementException exception = assertThrows(NoSuchElementException.class, () -> bookingService.cancelBooking(ID));
+        assertEquals("Cannot find booking with specified ID.", exception.getMessage());
+        verify(bookingRepository, never()).deleteByIdAndVersion(any(), any());
+    }
+
+    @Test
+    void cancelBooking_fails_whenDeletedConcurrently() {
+
+        Booking booking = new Booking(ID, DATE_TOMORROW, TO_DATE, EMAIL, FULL_NAME);
+        booking.setVersion(1L);
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking), Optional.empty());
+        when(bookingRepository.deleteByIdAndVersion(ID, 1L)).thenReturn(0);
 
         NoSuchElementException exception = assertThrows(NoSuchElementException.class, () -> bookingService.cancelBooking(ID));
         assertEquals("Cannot find booking with specified ID.", exception.getMessage());
@@ -240,7 +904,7 @@ class BookingServiceTest {
         assertEquals(DATE_TOMORROW, result.getCheckoutDate());
         assertEquals(EMAIL, result.getEmail());
         assertEquals(updatedValue, result.getFullName());
-        verify(bookingRepository, never()).findBookingsByCheckinDateBetween(any(), any());
+        verify(bookingRepository, never()).findBookingDatesByCheckoutDateAfter(any());
     }
 
     @Test
@@ -261,7 +925,7 @@ class BookingServiceTest {
         assertEquals(DATE_TOMORROW, result.getCheckoutDate());
         assertEquals(updatedValue, result.getEmail());
         assertEquals(FULL_NAME, result.getFullName());
-        verify(bookingRepository, never()).findBookingsByCheckinDateBetween(any(), any());
+        verify(bookingRepository, never()).findBookingDatesByCheckoutDateAfter(any());
     }
 
     @Test
@@ -311,6 +975,27 @@ class BookingServiceTest {
         assertEquals(FULL_NAME, result.getFullName());
     }
 
+    @Test
+    void updateBooking_success_notifiesListenersOfNightsChanged() {
+
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(INSTANT_YESTERDAY);
+
+        Booking booking = new Booking(ID, DATE_TODAY, DATE_TOMORROW.plusDays(1), EMAIL, FULL_NAME);
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking));
+        var updatedBooking = new Booking(ID, DATE_TOMORROW, DATE_TOMORROW.plusDays(2), EMAIL, FULL_NAME);
+        when(bookingRepository.save(updatedBooking)).thenReturn(updatedBooking);
+
+        var changes = new ArrayList<AvailabilityChangeDTO>();
+        bookingService.addOccupancyListener(changes::addAll);
+        bookingService.updateBooking(ID, new BookingDTO(DATE_TOMORROW, DATE_TOMORROW.plusDays(2), null, null));
+
+        // the night kept by the move is unchanged
+        long version = changes.get(0).getVersion();
+        assertEquals(List.of(new AvailabilityChangeDTO(DATE_TODAY, false, version),
+                new AvailabilityChangeDTO(DATE_TOMORROW.plusDays(1), true, version)), changes);
+    }
+
     @Test
     void updateBooking_fails_whenCheckinDateUpdated_andStayInProgress() {
 
@@ -326,4 +1011,83 @@ class BookingServiceTest {
                 assertThrows(IllegalArgumentException.class, () -> bookingService.updateBooking(ID, updateRequest));
         assertEquals("Stay is already in progress.", exception.getMessage());
     }
-}
\ No newline at end of file
+
+    @Test
+    void updateBooking_success_whenExpectedVersionMatches() {
+
+        Booking booking = new Booking(ID, DATE_TODAY, DATE_TOMORROW, EMAIL, FULL_NAME);
+        booking.setVersion(2L);
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking));
+
+        var updatedBooking = new Booking(booking);
+        updatedBooking.setFullName("New Name");
+        var savedBooking = new Booking(updatedBooking);
+        savedBooking.setVersion(3L);
+        when(bookingRepository.save(updatedBooking)).thenReturn(savedBooking);
+
+        var result = bookingService.updateBooking(ID, new BookingDTO(null, null, null, "New Name"), 2L);
+
+        assertEquals(3L, result.getVersion());
+        assertEquals("New Name", result.getValue().getFullName());
+    }
+
+    @Test
+    void updateBooking_fails_whenExpectedVersionDiffers() {
+
+        Booking booking = new Booking(ID, DATE_TODAY, DATE_TOMORROW, EMAIL, FULL_NAME);
+        booking.setVersion(3L);
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking));
+
+        var updateRequest = new BookingDTO(null, null, null, "New Name");
+        VersionMismatchException exception =
+                assertThrows(VersionMismatchException.class, () -> bookingService.updateBooking(ID, updateRequest, 2L));
+        assertEquals("Booking has been modified since the version provided.", exception.getMessage());
+        verify(bookingRepository, never()).save(any());
+    }
+
+    @Test
+    void updateBooking_fails_whenExpectedVersionOvertakenDuringSave() {
+
+        Booking booking = new Booking(ID, DATE_TODAY, DATE_TOMORROW, EMAIL, FULL_NAME);
+        booking.setVersion(2L);
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking));
+        when(bookingRepository.save(notNull())).thenThrow(new ObjectOptimisticLockingFailureException(Booking.class, ID));
+
+        var updateRequest = new BookingDTO(null, null, null, "New Name");
+        assertThrows(VersionMismatchException.class, () -> bookingService.updateBooking(ID, updateRequest, 2L));
+        verify(bookingRepository, times(1)).save(any());
+    }
+
+    @Test
+    void updateBooking_success_whenRetriedAfterConcurrentUpdate() {
+
+        Booking booking = new Booking(ID, DATE_TODAY, DATE_TOMORROW, EMAIL, FULL_NAME);
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking));
+
+        var updatedBooking = new Booking(ID, DATE_TODAY, DATE_TOMORROW, EMAIL, "New Name");
+        when(bookingRepository.save(updatedBooking))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Booking.class, ID))
+                .thenReturn(updatedBooking);
+
+        var result = bookingService.updateBooking(ID, new BookingDTO(null, null, null, "New Name"));
+
+        assertEquals("New Name", result.getFullName());
+        verify(bookingRepository, times(2)).findById(ID);
+    }
+
+    @Test
+    void updateBooking_fails_whenConcurrentUpdatesExhaustRetries() {
+
+        Booking booking = new Booking(ID, DATE_TODAY, DATE_TOMORROW, EMAIL, FULL_NAME);
+        when(bookingRepository.findById(ID)).thenReturn(Optional.of(booking));
+        when(bookingRepository.save(notNull())).thenThrow(new ObjectOptimisticLockingFailureException(Booking.class, ID));
+
+        var updateRequest = new BookingDTO(null, null, null, "New Name");
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> bookingService.updateBooking(ID, updateRequest));
+        verify(bookingRepository, times(3)).save(any());
+    }
+
+    private static BookingDates datesOf(Booking booking) {
+        return new BookingDates(booking.getCheckinDate(), booking.getCheckoutDate());
+    }
+}
@@ -0,0 +1,200 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import ca.andrewmccallum.novapacificisland.booking.model.Booking;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingWritePipelineTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstBatchStarted = new CountDownLatch(1);
+    private final CountDownLatch firstBatchReleased = new CountDownLatch(1);
+
+    private BookingWritePipeline pipeline;
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        firstBatchReleased.countDown();
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    void submit_success_batchesQueuedWrites() throws Exception {
+
+        start(4, 8);
+        var first = pipeline.submit(null, () -> new TestWrite("first"), Booking::getFullName);
+        assertTrue(firstBatchStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // queued while the writer is busy, so written together
+        var writes = new ArrayList<TestWrite>();
+        var futures = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 3; i++) {
+            var write = new TestWrite("queued-" + i);
+            writes.add(write);
+            futures.add(pipeline.submit(null, () -> write, Booking::getFullName));
+        }
+        firstBatchReleased.countDown();
+
+        assertEquals("first", first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("queued-" + i, futures.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertTrue(writes.get(i).committed);
+            assertTrue(writes.get(i).released);
+        }
+        assertEquals(List.of(1, 3), batchSizes);
+    }
+
+    @Test
+    void submit_fails_onlyForWriteFailingInBatch() throws Exception {
+
+        start(4, 8);
+        var first = pipeline.submit(null, () -> new TestWrite("first"), Booking::getFullName);
+        assertTrue(firstBatchStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        var failing = new TestWrite("failing");
+        var passing = new TestWrite("passing");
+        var failingFuture = pipeline.submit(null, () -> failing, Booking::getFullName);
+        var passingFuture = pipeline.submit(null, () -> passing, Booking::getFullName);
+        firstBatchReleased.countDown();
+
+        first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        var e = assertThrows(ExecutionException.class, () -> failingFuture.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+        assertEquals("passing", passingFuture.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // the failed batch was retried one write at a time
+        assertEquals(List.of(1, 2, 1, 1), batchSizes);
+        assertFalse(failing.committed);
+        assertTrue(failing.released);
+        assertTrue(passing.committed);
+    }
+
+    @Test
+    void submit_fails_withoutRetry_whenWriteFailsAlone() throws Exception {
+
+        start(4, 8);
+        var future = pipeline.submit(null, () -> new TestWrite("failing"), Booking::getFullName);
+
+        firstBatchReleased.countDown();
+        var e = assertThrows(ExecutionException.class, () -> future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+        assertEquals(List.of(1), batchSizes);
+    }
+
+    @Test
+    void submit_fails_whenStagingFails() throws Exception {
+
+        start(4, 8);
+        CompletableFuture<String> future = pipeline.submit(null, () -> {
+            throw new IllegalArgumentException("invalid");
+        }, Booking::getFullName);
+
+        var e = assertThrows(ExecutionException.class, () -> future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("invalid", e.getCause().getMessage());
+        firstBatchReleased.countDown();
+        assertEquals("next", pipeline.submit(null, () -> new TestWrite("next"), Booking::getFullName)
+                .get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void submit_success_defersSecondWriteToSameBooking() throws Exception {
+
+        start(4, 8);
+        var first = pipeline.submit(null, () -> new TestWrite("first"), Booking::getFullName);
+        assertTrue(firstBatchStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        var bookingId = UUID.randomUUID();
+        var futures = List.of(
+                pipeline.submit(bookingId, () -> new TestWrite("update-1"), Booking::getFullName),
+                pipeline.submit(null, () -> new TestWrite("other"), Booking::getFullName),
+                pipeline.submit(bookingId, () -> new TestWrite("update-2"), Booking::getFullName));
+        firstBatchReleased.countDown();
+
+        first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(List.of("update-1", "other", "update-2"), futures.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList()));
+        assertEquals(List.of(1, 2, 1), batchSizes);
+    }
+
+    @Test
+    void submit_fails_whenQueueFull() throws Exception {
+
+        start(1, 8);
+        pipeline.submit(null, () -> new TestWrite("first"), Booking::getFullName);
+        assertTrue(firstBatchStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        var queued = pipeline.submit(null, () -> new TestWrite("queued"), Booking::getFullName);
+        var rejected = pipeline.submit(null, () -> new TestWrite("rejected"), Booking::getFullName);
+
+        var e = assertThrows(ExecutionException.class, () -> rejected.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        firstBatchReleased.countDown();
+        assertEquals("queued", queued.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private void start(int capacity, int maxBatchSize) {
+
+        Function<List<StagedWrite>, List<Booking>> persister = writes -> {
+            batchSizes.add(writes.size());
+            if (batchSizes.size() == 1) {
+                firstBatchStarted.countDown();
+                try {
+                    firstBatchReleased.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return writes.stream().map(StagedWrite::persist).collect(Collectors.toList());
+        };
+
+        pipeline = new BookingWritePipeline(capacity, maxBatchSize, persister);
+        pipeline.start();
+    }
+
+    private static class TestWrite implements StagedWrite {
+
+        private final String name;
+        private volatile boolean committed;
+        private volatile boolean released;
+
+        private TestWrite(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Booking persist() {
+            if (name.equals("failing")) {
+                throw new IllegalArgumentException("The date(s) requested are no longer available.");
+            }
+            return new Booking(UUID.randomUUID(), null, null, null, name);
+        }
+
+        @Override
+        public void commit(Booking persisted) {
+            committed = true;
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+}
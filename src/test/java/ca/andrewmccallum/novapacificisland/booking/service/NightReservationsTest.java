@@ -0,0 +1,64 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NightReservationsTest {
+
+    private static final LocalDate DATE_START = LocalDate.of(2021, 7, 26);
+
+    private final NightReservations nightReservations = new NightReservations();
+
+    @Test
+    void claim_success() {
+
+        assertTrue(nightReservations.claim(DATE_START, DATE_START.plusDays(3)));
+        assertTrue(nightReservations.claim(DATE_START.plusDays(3), DATE_START.plusDays(4)));
+    }
+
+    @Test
+    void claim_fails_whenNightClaimed_andRollsBack() {
+
+        assertTrue(nightReservations.claim(DATE_START.plusDays(2), DATE_START.plusDays(3)));
+        assertFalse(nightReservations.claim(DATE_START, DATE_START.plusDays(3)));
+
+        // the first two nights were rolled back
+        assertTrue(nightReservations.claim(DATE_START, DATE_START.plusDays(2)));
+    }
+
+    @Test
+    void claim_success_whenSkippingOwnNights() {
+
+        assertTrue(nightReservations.claim(DATE_START, DATE_START.plusDays(2)));
+        assertTrue(nightReservations.claim(DATE_START.plusDays(1), DATE_START.plusDays(3), DATE_START, DATE_START.plusDays(2)));
+
+        nightReservations.release(DATE_START.plusDays(1), DATE_START.plusDays(3), DATE_START, DATE_START.plusDays(2));
+        assertFalse(nightReservations.claim(DATE_START.plusDays(1), DATE_START.plusDays(2)));
+        assertTrue(nightReservations.claim(DATE_START.plusDays(2), DATE_START.plusDays(3)));
+    }
+
+    @Test
+    void release_success() {
+
+        assertTrue(nightReservations.claim(DATE_START, DATE_START.plusDays(3)));
+        nightReservations.release(DATE_START, DATE_START.plusDays(3));
+
+        assertTrue(nightReservations.claim(DATE_START, DATE_START.plusDays(3)));
+    }
+
+    @Test
+    void clearClaimed_success() {
+
+        assertTrue(nightReservations.claim(DATE_START.plusDays(1), DATE_START.plusDays(3)));
+        assertTrue(nightReservations.claim(DATE_START.plusDays(64), DATE_START.plusDays(65)));
+        // before the nights being cleared
+        assertTrue(nightReservations.claim(DATE_START.minusDays(1), DATE_START));
+
+        long[] free = {-1L, -1L};
+        nightReservations.clearClaimed(free, DATE_START);
+
+        assertArrayEquals(new long[]{~0b110L, ~0b1L}, free);
+    }
+}
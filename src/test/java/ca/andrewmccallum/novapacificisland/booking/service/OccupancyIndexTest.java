@@ -0,0 +1,135 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+import ca.andrewmccallum.novapacificisland.booking.dto.AvailabilityWindowDTO;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OccupancyIndexTest {
+
+    private static final LocalDate DATE_START = LocalDate.of(2021, 7, 26);
+
+    private final OccupancyIndex occupancyIndex = new OccupancyIndex();
+
+    @Test
+    void findFree_success_whenEmpty() {
+
+        var free = occupancyIndex.findFree(DATE_START, DATE_START.plusDays(3));
+        assertEquals(List.of(DATE_START, DATE_START.plusDays(1), DATE_START.plusDays(2)), free);
+    }
+
+    @Test
+    void findFree_success_acrossWordBoundaries() {
+
+        // a window of 200 nights spans at least four words
+        var to = DATE_START.plusDays(200);
+        occupancyIndex.occupy(DATE_START.plusDays(60), DATE_START.plusDays(70));
+        occupancyIndex.occupy(DATE_START.plusDays(150), DATE_START.plusDays(151));
+
+        var expected = DATE_START.datesUntil(to)
+                .filter(d -> d.isBefore(DATE_START.plusDays(60)) || !d.isBefore(DATE_START.plusDays(70)))
+                .filter(d -> !d.equals(DATE_START.plusDays(150)))
+                .collect(Collectors.toList());
+
+        assertEquals(expected, occupancyIndex.findFree(DATE_START, to));
+    }
+
+    @Test
+    void findFreeBits_success_acrossWordBoundaries() {
+
+        // starting mid-word, over a window of 100 nights
+        occupancyIndex.occupy(DATE_START.plusDays(10), DATE_START.plusDays(70));
+        occupancyIndex.occupy(DATE_START.plusDays(99), DATE_START.plusDays(105));
+
+        var free = occupancyIndex.findFreeBits(DATE_START.plusDays(5), DATE_START.plusDays(105));
+
+        // free nights 0 to 4 and 65 to 93, nothing set past the end of the window
+        assertArrayEquals(new long[]{0b11111L, (1L << 30) - 2}, free);
+    }
+
+    @Test
+    void findFree_success_forManyWindows() {
+
+        occupancyIndex.occupy(DATE_START.plusDays(1), DATE_START.plusDays(2));
+
+        var free = occupancyIndex.findFree(List.of(
+                new AvailabilityWindowDTO(DATE_START, DATE_START.plusDays(3)),
+                new AvailabilityWindowDTO(DATE_START.plusDays(1), DATE_START.plusDays(2)),
+                new AvailabilityWindowDTO(DATE_START.plusDays(100), DATE_START.plusDays(101))));
+
+        assertEquals(List.of(
+                List.of(DATE_START, DATE_START.plusDays(2)),
+                List.of(),
+                List.of(DATE_START.plusDays(100))), free);
+    }
+
+    @Test
+    void findStayStarts_success_acrossWordBoundaries() {
+
+        // gaps of one to four nights either side of word boundaries
+        var to = DATE_START.plusDays(200);
+        occupancyIndex.occupy(DATE_START.plusDays(10), DATE_START.plusDays(62));
+        occupancyIndex.occupy(DATE_START.plusDays(63), DATE_START.plusDays(65));
+        occupancyIndex.occupy(DATE_START.plusDays(67), DATE_START.plusDays(126));
+        occupancyIndex.occupy(DATE_START.plusDays(130), DATE_START.plusDays(195));
+
+        for (int nights = 1; nights <= 3; nights++) {
+            int stay = nights;
+            var expected = DATE_START.datesUntil(to)
+                    .filter(d -> d.datesUntil(d.plusDays(stay)).noneMatch(occupancyIndex::isOccupied))
+                    .collect(Collectors.toList());
+
+            assertEquals(expected, occupancyIndex.findStayStarts(DATE_START, to, nights));
+        }
+    }
+
+    @Test
+    void findStayStarts_success_whenStayRunsPastWindow() {
+
+        occupancyIndex.occupy(DATE_START.plusDays(3), DATE_START.plusDays(4));
+
+        assertEquals(List.of(DATE_START, DATE_START.plusDays(1), DATE_START.plusDays(4)),
+                occupancyIndex.findStayStarts(DATE_START, DATE_START.plusDays(5), 2));
+    }
+
+    @Test
+    void findFree_success_whenWindowOutsideIndexedRange() {
+
+        occupancyIndex.occupy(DATE_START.plusDays(500), DATE_START.plusDays(501));
+
+        assertEquals(3, occupancyIndex.findFree(DATE_START, DATE_START.plusDays(3)).size());
+        assertEquals(3, occupancyIndex.findFree(DATE_START.plusDays(1000), DATE_START.plusDays(1003)).size());
+    }
+
+    @Test
+    void occupy_success_whenGrowingBackwards() {
+
+        occupancyIndex.occupy(DATE_START.plusDays(300), DATE_START.plusDays(301));
+        occupancyIndex.occupy(DATE_START, DATE_START.plusDays(1));
+
+        assertTrue(occupancyIndex.isOccupied(DATE_START));
+        assertTrue(occupancyIndex.isOccupied(DATE_START.plusDays(300)));
+        assertFalse(occupancyIndex.isOccupied(DATE_START.plusDays(1)));
+    }
+
+    @Test
+    void release_success() {
+
+        occupancyIndex.occupy(DATE_START, DATE_START.plusDays(3));
+        occupancyIndex.release(DATE_START.plusDays(1), DATE_START.plusDays(2));
+
+        assertEquals(List.of(DATE_START.plusDays(1)), occupancyIndex.findFree(DATE_START, DATE_START.plusDays(3)));
+    }
+
+    @Test
+    void move_success() {
+
+        occupancyIndex.occupy(DATE_START, DATE_START.plusDays(2));
+        occupancyIndex.move(DATE_START, DATE_START.plusDays(2), DATE_START.plusDays(1), DATE_START.plusDays(3));
+
+        assertEquals(List.of(DATE_START), occupancyIndex.findFree(DATE_START, DATE_START.plusDays(3)));
+    }
+}
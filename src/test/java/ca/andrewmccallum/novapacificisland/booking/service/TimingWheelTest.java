@@ -0,0 +1,75 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private final TimingWheel timingWheel = new TimingWheel(Duration.ofSeconds(1), 8, "test-wheel");
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    void tick_runsTask_onceDelayPassed() {
+
+        timingWheel.schedule(() -> ran.add("a"), Duration.ofMillis(2500));
+
+        tick(2);
+        assertEquals(List.of(), ran);
+
+        tick(1);
+        assertEquals(List.of("a"), ran);
+
+        tick(20);
+        assertEquals(List.of("a"), ran);
+    }
+
+    @Test
+    void tick_runsTask_whenDelaySpansManyTurns() {
+
+        // 8 buckets, so this hashes to the same bucket as a 3 second delay
+        timingWheel.schedule(() -> ran.add("late"), Duration.ofSeconds(19));
+        timingWheel.schedule(() -> ran.add("early"), Duration.ofSeconds(3));
+
+        tick(3);
+        assertEquals(List.of("early"), ran);
+
+        tick(15);
+        assertEquals(List.of("early"), ran);
+
+        tick(1);
+        assertEquals(List.of("early", "late"), ran);
+    }
+
+    @Test
+    void tick_skipsTask_whenCancelled() {
+
+        var timeout = timingWheel.schedule(() -> ran.add("a"), Duration.ofSeconds(1));
+        timingWheel.schedule(() -> ran.add("b"), Duration.ofSeconds(1));
+        timeout.cancel();
+
+        tick(1);
+        assertEquals(List.of("b"), ran);
+    }
+
+    @Test
+    void tick_runsOtherTasks_whenOneFails() {
+
+        timingWheel.schedule(() -> {
+            throw new IllegalStateException("Task failed.");
+        }, Duration.ZERO);
+        timingWheel.schedule(() -> ran.add("a"), Duration.ZERO);
+
+        tick(1);
+        assertEquals(List.of("a"), ran);
+    }
+
+    private void tick(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            timingWheel.tick();
+        }
+    }
+}
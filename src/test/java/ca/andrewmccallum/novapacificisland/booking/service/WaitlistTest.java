@@ -0,0 +1,77 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import ca.andrewmccallum.novapacificisland.booking.dto.BookingDTO;
+import ca.andrewmccallum.novapacificisland.booking.dto.HoldDTO;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WaitlistTest {
+
+    private static final LocalDate DATE_START = LocalDate.of(2021, 7, 27);
+    private static final HoldDTO HOLD = new HoldDTO(UUID.randomUUID(), Instant.ofEpochSecond(1627300556L));
+
+    private final Waitlist waitlist = new Waitlist();
+
+    @Test
+    void waitingFor_success_earliestFirst_onlyOverlapping() {
+
+        var late = waitlist.add(stay(1, 3));
+        var early = waitlist.add(stay(0, 2));
+        waitlist.add(stay(5, 6));
+
+        assertEquals(List.of(late.getId(), early.getId()), ids(waitlist.waitingFor(DATE_START, DATE_START.plusDays(2))));
+        assertEquals(List.of(late.getId()), ids(waitlist.waitingFor(DATE_START.plusDays(2), DATE_START.plusDays(3))));
+    }
+
+    @Test
+    void promote_success_stopsWaiting() {
+
+        var entry = waitlist.add(stay(0, 2));
+
+        assertTrue(waitlist.promote(entry, HOLD));
+        assertFalse(waitlist.promote(entry, HOLD));
+        assertEquals(List.of(), waitlist.waitingFor(DATE_START, DATE_START.plusDays(2)));
+        assertSame(HOLD, waitlist.get(entry.getId()).getHold());
+        assertFalse(waitlist.removeWaiting(entry.getId()));
+    }
+
+    @Test
+    void remove_success_stopsWaiting() {
+
+        var entry = waitlist.add(stay(0, 2));
+
+        assertTrue(waitlist.removeWaiting(entry.getId()));
+        assertFalse(waitlist.promote(entry, HOLD));
+        assertEquals(List.of(), waitlist.waitingFor(DATE_START, DATE_START.plusDays(2)));
+        assertEquals(0, waitlist.size());
+    }
+
+    @Test
+    void removeWaitingBefore_success_onlyEarlierCheckins() {
+
+        var early = waitlist.add(stay(0, 2));
+        var promoted = waitlist.add(stay(0, 1));
+        var later = waitlist.add(stay(1, 3));
+        assertTrue(waitlist.promote(promoted, HOLD));
+
+        assertEquals(1, waitlist.removeWaitingBefore(DATE_START.plusDays(1)));
+        assertNull(waitlist.get(early.getId()));
+        // promoted stays leave once their hold ends
+        assertNotNull(waitlist.get(promoted.getId()));
+        assertEquals(List.of(later.getId()), ids(waitlist.waitingFor(DATE_START, DATE_START.plusDays(3))));
+    }
+
+    private static BookingDTO stay(int fromDays, int toDays) {
+        return new BookingDTO(DATE_START.plusDays(fromDays), DATE_START.plusDays(toDays), "email@booking.test", "Booking User");
+    }
+
+    private static List<UUID> ids(List<Waitlist.Entry> entries) {
+        return entries.stream().map(Waitlist.Entry::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,92 @@
+package ca.andrewmccallum.novapacificisland.booking.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAdmissionTest {
+
+    private final CountDownLatch admitted = new CountDownLatch(1);
+    private final CountDownLatch finish = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        finish.countDown();
+    }
+
+    @Test
+    void admit_success_whenPermitFree() {
+
+        var writeAdmission = new WriteAdmission(1, 0, Duration.ZERO);
+
+        assertEquals("written", writeAdmission.admit(() -> "written"));
+        assertEquals("written", writeAdmission.admit(() -> "written"));
+    }
+
+    @Test
+    void admit_fails_whenQueueFull() throws InterruptedException {
+
+        var writeAdmission = new WriteAdmission(1, 0, Duration.ofSeconds(10));
+        occupy(writeAdmission);
+
+        long start = System.nanoTime();
+        assertThrows(WritesOverloadedException.class, () -> writeAdmission.admit(() -> "written"));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+        assertEquals(1, writeAdmission.rejectedQueueFull());
+        assertEquals(0, writeAdmission.queued());
+    }
+
+    @Test
+    void admit_fails_whenWaitedTooLong() throws InterruptedException {
+
+        var writeAdmission = new WriteAdmission(1, 1, Duration.ofMillis(50));
+        occupy(writeAdmission);
+
+        assertThrows(WritesOverloadedException.class, () -> writeAdmission.admit(() -> "written"));
+        assertEquals(1, writeAdmission.rejectedTimeout());
+        assertEquals(0, writeAdmission.queued());
+    }
+
+    @Test
+    void admit_fails_withRetryAfter_fromWriteDurations() throws InterruptedException {
+
+        var writeAdmission = new WriteAdmission(1, 0, Duration.ZERO);
+        writeAdmission.admit(() -> {
+            sleep(20);
+            return "written";
+        });
+        occupy(writeAdmission);
+
+        var exception = assertThrows(WritesOverloadedException.class, () -> writeAdmission.admit(() -> "written"));
+        assertTrue(exception.getRetryAfter().toMillis() >= 20);
+    }
+
+    /**
+     * Hold the only permit until the test ends.
+     */
+    private void occupy(WriteAdmission writeAdmission) throws InterruptedException {
+
+        CompletableFuture.runAsync(() -> writeAdmission.admit(() -> {
+            admitted.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        admitted.await();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}